@@ -24,19 +24,16 @@
  */
 package com.github.cambierr.lorawanpacket.lorawan;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.ShortBufferException;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
+ * AES-CMAC (RFC 4493) on top of a {@link BlockCipher}. An instance can be
+ * reused: {@link #doFinal()} resets it for the next message.
  *
  * @author cambierr
  */
@@ -44,38 +41,38 @@ public class AesCmac {
 
     private static final byte CONSTANT = (byte) 0x87;
     private static final int BLOCK_SIZE = 16;
-    private static final IvParameterSpec ZERO_IV = new IvParameterSpec(new byte[16]);
 
     private int macLength;
-    private Cipher aesCipher;
+    private BlockCipher aesCipher;
 
     private byte[] buffer;
     private int bufferCount;
+    private final byte[] state = new byte[BLOCK_SIZE];
 
-    private byte[] k1;
-    private byte[] k2;
+    private final byte[] k1 = new byte[BLOCK_SIZE];
+    private final byte[] k2 = new byte[BLOCK_SIZE];
 
     public AesCmac() throws NoSuchAlgorithmException {
         this(BLOCK_SIZE);
     }
 
     public AesCmac(int length) throws NoSuchAlgorithmException {
+        this(AesEngine.getDefault().create(), length);
+    }
+
+    /**
+     * @param cipher the cipher to chain with; {@link #init(byte[])} re-keys it
+     */
+    public AesCmac(BlockCipher cipher, int length) throws NoSuchAlgorithmException {
         if (length > BLOCK_SIZE) {
             throw new NoSuchAlgorithmException("AES CMAC maximum length is " + BLOCK_SIZE);
         }
-
-        try {
-            macLength = length;
-            aesCipher = Cipher.getInstance("AES/CBC/NOPADDING");
-            buffer = new byte[BLOCK_SIZE];
-        } catch (NoSuchPaddingException ex) {
-            throw new RuntimeException(ex);
-        }
+        macLength = length;
+        aesCipher = cipher;
+        buffer = new byte[BLOCK_SIZE];
     }
 
-    private byte[] doubleSubKey(byte[] k) {
-        byte[] ret = new byte[k.length];
-
+    private static void doubleSubKey(byte[] k, byte[] ret) {
         boolean firstBitSet = ((k[0] & 0x80) != 0);
         for (int i = 0; i < k.length; i++) {
             ret[i] = (byte) (k[i] << 1);
@@ -86,7 +83,6 @@ public class AesCmac {
         if (firstBitSet) {
             ret[ret.length - 1] ^= CONSTANT;
         }
-        return ret;
     }
 
     public final void init(Key key) throws InvalidKeyException, InvalidAlgorithmParameterException {
@@ -96,53 +92,76 @@ public class AesCmac {
         if (!((SecretKeySpec) key).getAlgorithm().equals("AES")) {
             throw new InvalidKeyException("Key is not an AES key.");
         }
-        aesCipher.init(Cipher.ENCRYPT_MODE, key, ZERO_IV);
-        byte[] k0 = new byte[BLOCK_SIZE];
-        try {
-            aesCipher.update(k0, 0, k0.length, k0, 0);
-        } catch (ShortBufferException sbe) {
-        }
-        k1 = doubleSubKey(k0);
-        k2 = doubleSubKey(k1);
+        init(key.getEncoded());
+    }
+
+    public final void init(byte[] key) {
+        aesCipher.init(key);
+        // the state is cleared by reset() right after serving as k0
+        reset();
+        aesCipher.encryptBlock(state, 0, state, 0);
+        doubleSubKey(state, k1);
+        doubleSubKey(k1, k2);
 
-        aesCipher.init(Cipher.ENCRYPT_MODE, key, ZERO_IV);
+        reset();
+    }
+
+    /**
+     * Discards the message in progress, for instance one interrupted by an
+     * exception, so that the next update starts a new message.
+     */
+    public final void reset() {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            state[i] = 0;
+        }
         bufferCount = 0;
     }
 
     public final void updateByte(byte b) {
-        updateBlock(new byte[]{b});
+        if (bufferCount == BLOCK_SIZE) {
+            processBuffer();
+        }
+        buffer[bufferCount++] = b;
     }
 
     public final void updateBlock(byte[] data) {
-        int currentOffset = 0;
-
-        if (data.length < BLOCK_SIZE - bufferCount) {
-            System.arraycopy(data, 0, buffer, bufferCount, data.length);
-            bufferCount += data.length;
-            return;
-        } else if (bufferCount > 0) {
-            System.arraycopy(data, 0, buffer, bufferCount, BLOCK_SIZE - bufferCount);
-            try {
-                aesCipher.update(buffer, 0, BLOCK_SIZE, buffer, 0);
-            } catch (ShortBufferException sbe) {
-            }
-            currentOffset += BLOCK_SIZE - bufferCount;
-            bufferCount = 0;
-        }
-        while (currentOffset + BLOCK_SIZE < data.length) {
-            try {
-                aesCipher.update(data, currentOffset, BLOCK_SIZE, buffer, 0);
-            } catch (ShortBufferException sbe) {
+        update(data, 0, data.length);
+    }
+
+    public final void update(byte[] data, int offset, int length) {
+        while (length > 0) {
+            if (bufferCount == BLOCK_SIZE) {
+                processBuffer();
             }
-            currentOffset += BLOCK_SIZE;
+            int n = Math.min(BLOCK_SIZE - bufferCount, length);
+            System.arraycopy(data, offset, buffer, bufferCount, n);
+            bufferCount += n;
+            offset += n;
+            length -= n;
         }
-        if (currentOffset != data.length) {
-            System.arraycopy(data, currentOffset, buffer, 0, data.length - currentOffset);
-            bufferCount = data.length - currentOffset;
+    }
+
+    /**
+     * Absolute variant: the position of the buffer is not modified.
+     */
+    public final void update(ByteBuffer data, int index, int length) {
+        for (int i = index; i < index + length; i++) {
+            updateByte(data.get(i));
         }
     }
 
+    public final void update(ByteBuffer data) {
+        update(data, data.position(), data.remaining());
+        data.position(data.limit());
+    }
+
     public final byte[] doFinal() {
+        byte[] mac = new byte[macLength];
+        doFinal(mac, 0);
+        return mac;
+    }
+
+    public final void doFinal(byte[] out, int offset) {
         byte[] subKey = k1;
         if (bufferCount < BLOCK_SIZE) {
             buffer[bufferCount] = (byte) 0x80;
@@ -152,16 +171,19 @@ public class AesCmac {
             subKey = k2;
         }
         for (int i = 0; i < BLOCK_SIZE; i++) {
-            buffer[i] ^= subKey[i];
+            state[i] ^= buffer[i] ^ subKey[i];
         }
-        try {
-            aesCipher.doFinal(buffer, 0, BLOCK_SIZE, buffer, 0);
-        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException ex) {
+        aesCipher.encryptBlock(state, 0, state, 0);
+
+        System.arraycopy(state, 0, out, offset, macLength);
+        reset();
+    }
+
+    private void processBuffer() {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            state[i] ^= buffer[i];
         }
+        aesCipher.encryptBlock(state, 0, state, 0);
         bufferCount = 0;
-
-        byte[] mac = new byte[macLength];
-        System.arraycopy(buffer, 0, mac, 0, macLength);
-        return mac;
     }
 }
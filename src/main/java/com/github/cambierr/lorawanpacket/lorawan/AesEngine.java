@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+/**
+ * Available {@link BlockCipher} implementations. The default one is read from
+ * the "lorawanpacket.aes" system property ("jce" or "java", JCE when unset)
+ * and can be changed at runtime; it applies to contexts created afterwards.
+ *
+ * @author cambierr
+ */
+public enum AesEngine {
+
+    JCE {
+        @Override
+        public BlockCipher create() {
+            return new JceBlockCipher();
+        }
+    },
+    JAVA {
+        @Override
+        public BlockCipher create() {
+            return new JavaAes128();
+        }
+    };
+
+    public static final String PROPERTY = "lorawanpacket.aes";
+
+    private static volatile AesEngine defaultEngine = fromName(System.getProperty(PROPERTY, "jce"));
+
+    /**
+     * @return a new, uninitialized cipher
+     */
+    public abstract BlockCipher create();
+
+    public static AesEngine getDefault() {
+        return defaultEngine;
+    }
+
+    public static void setDefault(AesEngine _engine) {
+        if (_engine == null) {
+            throw new IllegalArgumentException("engine can not be null");
+        }
+        defaultEngine = _engine;
+    }
+
+    public static AesEngine fromName(String _name) {
+        for (AesEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(_name)) {
+                return engine;
+            }
+        }
+        throw new RuntimeException("Unknown AES engine " + _name);
+    }
+
+}
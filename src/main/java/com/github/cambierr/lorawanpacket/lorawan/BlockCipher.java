@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+/**
+ * AES-128 block encryption, as needed by LoRaWAN: ECB on independent 16
+ * bytes blocks (keystream, CMAC chaining is done by the caller).
+ * Implementations are not thread safe.
+ *
+ * @author cambierr
+ */
+public interface BlockCipher {
+
+    /**
+     * Sets the 16 bytes key used by the following operations.
+     */
+    void init(byte[] _key);
+
+    /**
+     * Encrypts one block; _in and _out may overlap exactly.
+     */
+    void encryptBlock(byte[] _in, int _inOffset, byte[] _out, int _outOffset);
+
+    /**
+     * Encrypts _length bytes, which must be a multiple of 16, block by block.
+     */
+    default void encrypt(byte[] _in, int _inOffset, int _length, byte[] _out, int _outOffset) {
+        if (_length % 16 != 0) {
+            throw new IllegalArgumentException("length must be a multiple of 16");
+        }
+        for (int i = 0; i < _length; i += 16) {
+            encryptBlock(_in, _inOffset + i, _out, _outOffset + i);
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a data frame PHYPayload in one pass, without building the
+ * PhyPayload/MacPayload/FHDR/DataPayload graph: MHDR, FHDR, FPort and the
+ * FRMPayload, encrypted block by block, are fed to the MIC as they are
+ * written, and the MIC is appended. Fields are kept between frames,
+ * so an instance can be reused by changing only what differs (typically
+ * FCnt and the payload). Not thread safe.
+ *
+ * @author cambierr
+ */
+public class DataFrameEncoder {
+
+    private MType mType = MType.UNCONF_DATA_DOWN;
+    private MajorVersion majorVersion = MajorVersion.LORAWAN_R_1;
+    private int devAddr;
+    private byte fCtrl;
+    private int fCnt;
+    private byte[] fOpts = new byte[0];
+    private int fPort = -1;
+    private byte[] payload;
+    private int payloadOffset;
+    private int payloadLength;
+    private SessionCrypto nwkSKey;
+    private SessionCrypto appSKey;
+    private final byte[] header = new byte[1 + 7 + 15 + 1];
+    private final byte[] block = new byte[16];
+
+    public DataFrameEncoder setMType(MType _mType) {
+        if (_mType.getDirection() == null || _mType == MType.JOIN_REQUEST || _mType == MType.JOIN_ACCEPT) {
+            throw new IllegalArgumentException("not a data frame MType");
+        }
+        mType = _mType;
+        return this;
+    }
+
+    public DataFrameEncoder setMajorVersion(MajorVersion _majorVersion) {
+        majorVersion = _majorVersion;
+        return this;
+    }
+
+    /**
+     * @param _devAddr the DevAddr, written little-endian
+     */
+    public DataFrameEncoder setDevAddr(int _devAddr) {
+        devAddr = _devAddr;
+        return this;
+    }
+
+    /**
+     * @param _fCtrl the FCtrl flags; FOptsLen is taken from the FOpts
+     */
+    public DataFrameEncoder setfCtrl(byte _fCtrl) {
+        fCtrl = (byte) (_fCtrl & 0xf0);
+        return this;
+    }
+
+    /**
+     * @param _fCnt the full 32 bits frame counter; its 16 low bits are sent
+     */
+    public DataFrameEncoder setfCnt(int _fCnt) {
+        fCnt = _fCnt;
+        return this;
+    }
+
+    public DataFrameEncoder setfOpts(byte[] _fOpts) {
+        if (_fOpts.length > 15) {
+            throw new IllegalArgumentException("fOpts can not exceed 15 bytes");
+        }
+        fOpts = _fOpts;
+        return this;
+    }
+
+    /**
+     * Removes FPort and FRMPayload from the next frames.
+     */
+    public DataFrameEncoder clearPayload() {
+        fPort = -1;
+        payload = null;
+        payloadOffset = 0;
+        payloadLength = 0;
+        return this;
+    }
+
+    /**
+     * @param _fPort 0 to 255, 0 meaning MAC commands encrypted with the NwkSKey
+     * @param _clear the clear payload, not copied: it must not change until
+     * {@link #encode} returns
+     */
+    public DataFrameEncoder setPayload(int _fPort, byte[] _clear, int _offset, int _length) {
+        if (_fPort < 0 || _fPort > 255) {
+            throw new IllegalArgumentException("fPort must be between 0 and 255");
+        }
+        fPort = _fPort;
+        payload = _clear;
+        payloadOffset = _offset;
+        payloadLength = _length;
+        return this;
+    }
+
+    public DataFrameEncoder setPayload(int _fPort, byte[] _clear) {
+        return setPayload(_fPort, _clear, 0, _clear.length);
+    }
+
+    public DataFrameEncoder setNwkSKey(SessionCrypto _nwkSKey) {
+        nwkSKey = _nwkSKey;
+        return this;
+    }
+
+    public DataFrameEncoder setAppSKey(SessionCrypto _appSKey) {
+        appSKey = _appSKey;
+        return this;
+    }
+
+    /**
+     * @return the exact number of bytes {@link #encode} writes
+     */
+    public int length() {
+        return 1 + 7 + fOpts.length + (fPort < 0 ? 0 : 1 + payloadLength) + 4;
+    }
+
+    /**
+     * Writes the frame at the position of _dst and moves the position past
+     * it.
+     *
+     * @throws BufferOverflowException if _dst has less than
+     * {@link #length()} bytes remaining, nothing being written
+     */
+    public void encode(ByteBuffer _dst) {
+        if (nwkSKey == null) {
+            throw new RuntimeException("undefined nwkSKey");
+        }
+        SessionCrypto payloadKey = fPort == 0 ? nwkSKey : appSKey;
+        if (fPort > 0 && appSKey == null) {
+            throw new RuntimeException("undefined appSKey");
+        }
+        if (fPort == 0 && fOpts.length > 0) {
+            throw new RuntimeException("fPort 0 can not be used with fOpts");
+        }
+        int start = _dst.position();
+        if (_dst.remaining() < length()) {
+            throw new BufferOverflowException();
+        }
+
+        Direction dir = mType.getDirection();
+        int n = 0;
+        header[n++] = (byte) (mType.getValue() << 5 | majorVersion.bits());
+        header[n++] = (byte) devAddr;
+        header[n++] = (byte) (devAddr >> 8);
+        header[n++] = (byte) (devAddr >> 16);
+        header[n++] = (byte) (devAddr >> 24);
+        header[n++] = (byte) (fCtrl | fOpts.length);
+        header[n++] = (byte) fCnt;
+        header[n++] = (byte) (fCnt >> 8);
+        System.arraycopy(fOpts, 0, header, n, fOpts.length);
+        n += fOpts.length;
+        if (fPort >= 0) {
+            header[n++] = (byte) fPort;
+        }
+
+        AesCmac cmac = nwkSKey.getCmac();
+        SessionCrypto.fillB0(block, dir, devAddr, fCnt, n + payloadLength);
+        cmac.update(block, 0, block.length);
+        int p = put(_dst, start, cmac, header, n);
+        if (fPort >= 0) {
+            for (int done = 0, i = 1; done < payloadLength; i++) {
+                int len = Math.min(block.length, payloadLength - done);
+                payloadKey.cipherPayload(dir, devAddr, fCnt, i, payload, payloadOffset + done, block, 0, len);
+                p = put(_dst, p, cmac, block, len);
+                done += len;
+            }
+        }
+        cmac.doFinal(block, 0);
+        for (int i = 0; i < 4; i++) {
+            _dst.put(p++, block[i]);
+        }
+        _dst.position(p);
+    }
+
+    /**
+     * Writes _length bytes of _src at _index of _dst and feeds them to the
+     * MIC.
+     */
+    private static int put(ByteBuffer _dst, int _index, AesCmac _cmac, byte[] _src, int _length) {
+        for (int i = 0; i < _length; i++) {
+            _dst.put(_index + i, _src[i]);
+        }
+        _cmac.update(_src, 0, _length);
+        return _index + _length;
+    }
+
+}
@@ -25,16 +25,11 @@ package com.github.cambierr.lorawanpacket.lorawan;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
  *
@@ -45,8 +40,8 @@ public class DataPayload implements FRMPayload {
     private MacPayload mac;
     private byte[] payload;
 
-    private byte[] nwkSKey;
-    private byte[] appSKey;
+    private SessionCrypto nwkSKey;
+    private SessionCrypto appSKey;
 
     public DataPayload(MacPayload _mac, ByteBuffer _raw) {
         mac = _mac;
@@ -61,33 +56,20 @@ public class DataPayload implements FRMPayload {
     }
 
     public byte[] computeMic() throws MalformedPacketException {
+        int mic = computeIntMic();
+        return new byte[]{(byte) mic, (byte) (mic >> 8), (byte) (mic >> 16), (byte) (mic >> 24)};
+    }
+
+    private int computeIntMic() throws MalformedPacketException {
         if (nwkSKey == null) {
             throw new RuntimeException("undefined nwkSKey");
         }
-        //size = mhdr + MacPayload + 16 (B0)
-        ByteBuffer body = ByteBuffer.allocate(1 + mac.length() + 16);
+        ByteBuffer body = ByteBuffer.allocate(1 + mac.length());
         body.order(ByteOrder.LITTLE_ENDIAN);
-
-        body.put((byte) 0x49);
-        body.put(new byte[]{0x00, 0x00, 0x00, 0x00});
-        body.put(mac.getPhyPayload().getMType().getDirection().value());
-        body.put(mac.getFhdr().getDevAddr());
-        body.putInt(mac.getFhdr().getfCnt());
-        body.put((byte) 0x00);
-        body.put((byte) (1 + mac.length()));
-
         body.put(mac.getPhyPayload().getMHDR());
         mac.toRaw(body);
 
-        AesCmac aesCmac;
-        try {
-            aesCmac = new AesCmac();
-            aesCmac.init(new SecretKeySpec(nwkSKey, "AES"));
-            aesCmac.updateBlock(body.array());
-            return Arrays.copyOfRange(aesCmac.doFinal(), 0, 4);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
-            throw new RuntimeException("Could not compute AesCmac", ex);
-        }
+        return nwkSKey.computeDataMic(mac.getPhyPayload().getMType().getDirection(), mac.getFhdr().getDevAddrInt(), mac.getFhdr().getfCnt() & 0xffff, body, 0, body.capacity());
     }
 
     @Override
@@ -102,45 +84,16 @@ public class DataPayload implements FRMPayload {
     }
 
     public byte[] getClearPayLoad() throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, MalformedPacketException {
-        byte[] key;
-        if (mac.getfPort() == 0) {
-            if (nwkSKey == null) {
-                throw new RuntimeException("undefined nwkSKey");
-            }
-            key = nwkSKey;
-        } else {
-            if (appSKey == null) {
-                throw new RuntimeException("undefined appSKey");
-            }
-            key = appSKey;
-        }
-        int k = (int) Math.ceil(payload.length / 16.0);
-        ByteBuffer a = ByteBuffer.allocate(16 * k);
-        a.order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 1; i <= k; i++) {
-            a.put((byte) 0x01);
-            a.put(new byte[]{0x00, 0x00, 0x00, 0x00});
-            a.put(mac.getPhyPayload().getMType().getDirection().value());
-            a.put(mac.getFhdr().getDevAddr());
-            a.putInt(mac.getFhdr().getfCnt());
-            a.put((byte) 0x00);
-            a.put((byte) i);
-        }
-        Key aesKey = new SecretKeySpec(key, "AES");
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, aesKey);
-        byte[] s = cipher.doFinal(a.array());
-        byte[] paddedPayload = new byte[16 * k];
-        System.arraycopy(payload, 0, paddedPayload, 0, payload.length);
-        byte[] plainPayload = new byte[payload.length];
-        for (int i = 0; i < payload.length; i++) {
-            plainPayload[i] = (byte) (s[i] ^ paddedPayload[i]);
-        }
-        return plainPayload;
+        return cipher(payload);
     }
 
     public DataPayload setClearPayLoad(byte[] _data) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, MalformedPacketException {
-        byte[] key;
+        payload = cipher(_data);
+        return this;
+    }
+
+    private byte[] cipher(byte[] _in) throws MalformedPacketException {
+        SessionCrypto key;
         if (mac.getfPort() == 0) {
             if (nwkSKey == null) {
                 throw new RuntimeException("undefined nwkSKey");
@@ -152,29 +105,9 @@ public class DataPayload implements FRMPayload {
             }
             key = appSKey;
         }
-        int k = (int) Math.ceil(_data.length / 16.0);
-        ByteBuffer a = ByteBuffer.allocate(16 * k);
-        a.order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 1; i <= k; i++) {
-            a.put((byte) 0x01);
-            a.put(new byte[]{0x00, 0x00, 0x00, 0x00});
-            a.put(mac.getPhyPayload().getMType().getDirection().value());
-            a.put(mac.getFhdr().getDevAddr());
-            a.putInt(mac.getFhdr().getfCnt());
-            a.put((byte) 0x00);
-            a.put((byte) i);
-        }
-        Key aesKey = new SecretKeySpec(key, "AES");
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, aesKey);
-        byte[] s = cipher.doFinal(a.array());
-        byte[] paddedPayload = new byte[16 * k];
-        System.arraycopy(_data, 0, paddedPayload, 0, _data.length);
-        payload = new byte[_data.length];
-        for (int i = 0; i < _data.length; i++) {
-            payload[i] = (byte) (s[i] ^ paddedPayload[i]);
-        }
-        return this;
+        byte[] out = new byte[_in.length];
+        key.cipherPayload(mac.getPhyPayload().getMType().getDirection(), mac.getFhdr().getDevAddrInt(), mac.getFhdr().getfCnt() & 0xffff, _in, 0, out, 0, _in.length);
+        return out;
     }
 
     public MacPayload getMac() {
@@ -197,24 +130,44 @@ public class DataPayload implements FRMPayload {
 
     @Override
     public boolean validateMic() throws MalformedPacketException {
-        return Arrays.equals(computeMic(), mac.getPhyPayload().getMic());
+        byte[] mic = mac.getPhyPayload().getMic();
+        return mic != null && mic.length == 4
+                && computeIntMic() == ((mic[0] & 0xff) | (mic[1] & 0xff) << 8 | (mic[2] & 0xff) << 16 | (mic[3] & 0xff) << 24);
     }
 
     public DataPayload setNwkSKey(byte[] _nwkSKey) {
-        nwkSKey = _nwkSKey;
+        nwkSKey = _nwkSKey == null ? null : new SessionCrypto(_nwkSKey);
         return this;
     }
 
     public byte[] getNwkSKey() {
+        return nwkSKey == null ? null : nwkSKey.getKey();
+    }
+
+    public DataPayload setNwkSCrypto(SessionCrypto _nwkSKey) {
+        nwkSKey = _nwkSKey;
+        return this;
+    }
+
+    public SessionCrypto getNwkSCrypto() {
         return nwkSKey;
     }
 
     public DataPayload setAppSKey(byte[] _appSKey) {
-        appSKey = _appSKey;
+        appSKey = _appSKey == null ? null : new SessionCrypto(_appSKey);
         return this;
     }
 
     public byte[] getAppSKey() {
+        return appSKey == null ? null : appSKey.getKey();
+    }
+
+    public DataPayload setAppSCrypto(SessionCrypto _appSKey) {
+        appSKey = _appSKey;
+        return this;
+    }
+
+    public SessionCrypto getAppSCrypto() {
         return appSKey;
     }
 
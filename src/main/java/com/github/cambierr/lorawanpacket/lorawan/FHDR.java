@@ -68,6 +68,18 @@ public class FHDR {
         return this;
     }
 
+    /**
+     * @return the DevAddr, read little-endian
+     */
+    public int getDevAddrInt() {
+        return Identifiers.devAddr(devAddr);
+    }
+
+    public FHDR setDevAddr(int _devAddr) {
+        this.devAddr = Identifiers.devAddr(_devAddr);
+        return this;
+    }
+
     public byte getfCtrl() {
         return fCtrl;
     }
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+/**
+ * Conversions between the byte arrays of the packets and primitive
+ * identifiers, usable as allocation free map keys.
+ *
+ * LoRaWAN fields (DevAddr, NetID, AppEUI, DevEUI) are little-endian on the
+ * wire; their primitive value is the usual written form, e.g. the DevAddr
+ * sent as F1 7D BE 49 is 0x49BE7DF1. The gateway EUI of the Semtech
+ * protocol is sent big-endian.
+ *
+ * @author cambierr
+ */
+public final class Identifiers {
+
+    private Identifiers() {
+    }
+
+    public static int devAddr(byte[] _raw) {
+        return (_raw[0] & 0xff) | (_raw[1] & 0xff) << 8 | (_raw[2] & 0xff) << 16 | (_raw[3] & 0xff) << 24;
+    }
+
+    public static byte[] devAddr(int _devAddr) {
+        return new byte[]{(byte) _devAddr, (byte) (_devAddr >>> 8), (byte) (_devAddr >>> 16), (byte) (_devAddr >>> 24)};
+    }
+
+    /**
+     * @return the 24 bits NetID
+     */
+    public static int netId(byte[] _raw) {
+        return (_raw[0] & 0xff) | (_raw[1] & 0xff) << 8 | (_raw[2] & 0xff) << 16;
+    }
+
+    public static byte[] netId(int _netId) {
+        if ((_netId & 0xff000000) != 0) {
+            throw new IllegalArgumentException("NetID is 24 bits");
+        }
+        return new byte[]{(byte) _netId, (byte) (_netId >>> 8), (byte) (_netId >>> 16)};
+    }
+
+    /**
+     * @return an AppEUI or DevEUI, read little-endian
+     */
+    public static long eui(byte[] _raw) {
+        long v = 0;
+        for (int i = 7; i >= 0; i--) {
+            v = v << 8 | (_raw[i] & 0xff);
+        }
+        return v;
+    }
+
+    public static byte[] eui(long _eui) {
+        byte[] raw = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            raw[i] = (byte) (_eui >>> (8 * i));
+        }
+        return raw;
+    }
+
+    /**
+     * @return a gateway EUI, read big-endian
+     */
+    public static long gatewayEui(byte[] _raw) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = v << 8 | (_raw[i] & 0xff);
+        }
+        return v;
+    }
+
+    public static byte[] gatewayEui(long _eui) {
+        byte[] raw = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            raw[i] = (byte) (_eui >>> (56 - 8 * i));
+        }
+        return raw;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+/**
+ * Pure Java, encrypt-only AES-128 using the classic 32 bits T-tables and
+ * expanded round keys. It is slower per frame than the JCE engine, the
+ * default, but it never allocates, re-keying included, and does not
+ * depend on a security provider.
+ *
+ * @author cambierr
+ */
+public class JavaAes128 implements BlockCipher {
+
+    private static final int ROUNDS = 10;
+
+    private static final byte[] SBOX = new byte[256];
+    private static final int[] T0 = new int[256];
+    private static final int[] T1 = new int[256];
+    private static final int[] T2 = new int[256];
+    private static final int[] T3 = new int[256];
+    private static final int[] RCON = {0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36};
+
+    static {
+        // walk GF(2^8) with the generator 3 to get inverses, then apply the affine map
+        int p = 1;
+        int q = 1;
+        do {
+            p = p ^ (p << 1) ^ ((p & 0x80) != 0 ? 0x11b : 0);
+            q ^= q << 1;
+            q ^= q << 2;
+            q ^= q << 4;
+            q &= 0xff;
+            if ((q & 0x80) != 0) {
+                q ^= 0x09;
+            }
+            int x = q ^ rotl8(q, 1) ^ rotl8(q, 2) ^ rotl8(q, 3) ^ rotl8(q, 4);
+            SBOX[p] = (byte) (x ^ 0x63);
+        } while (p != 1);
+        SBOX[0] = 0x63;
+
+        for (int i = 0; i < 256; i++) {
+            int s = SBOX[i] & 0xff;
+            int s2 = xtime(s);
+            int s3 = s2 ^ s;
+            int t = s2 << 24 | s << 16 | s << 8 | s3;
+            T0[i] = t;
+            T1[i] = Integer.rotateRight(t, 8);
+            T2[i] = Integer.rotateRight(t, 16);
+            T3[i] = Integer.rotateRight(t, 24);
+        }
+    }
+
+    private final int[] roundKeys = new int[4 * (ROUNDS + 1)];
+
+    @Override
+    public void init(byte[] _key) {
+        if (_key == null || _key.length != 16) {
+            throw new IllegalArgumentException("key must be 16 bytes long");
+        }
+        for (int i = 0; i < 4; i++) {
+            roundKeys[i] = readInt(_key, 4 * i);
+        }
+        for (int i = 4; i < roundKeys.length; i++) {
+            int t = roundKeys[i - 1];
+            if (i % 4 == 0) {
+                t = subWord(Integer.rotateLeft(t, 8)) ^ (RCON[i / 4 - 1] << 24);
+            }
+            roundKeys[i] = roundKeys[i - 4] ^ t;
+        }
+    }
+
+    @Override
+    public void encryptBlock(byte[] _in, int _inOffset, byte[] _out, int _outOffset) {
+        int[] rk = roundKeys;
+        int s0 = readInt(_in, _inOffset) ^ rk[0];
+        int s1 = readInt(_in, _inOffset + 4) ^ rk[1];
+        int s2 = readInt(_in, _inOffset + 8) ^ rk[2];
+        int s3 = readInt(_in, _inOffset + 12) ^ rk[3];
+
+        int k = 4;
+        for (int round = 1; round < ROUNDS; round++) {
+            int t0 = T0[s0 >>> 24] ^ T1[(s1 >>> 16) & 0xff] ^ T2[(s2 >>> 8) & 0xff] ^ T3[s3 & 0xff] ^ rk[k];
+            int t1 = T0[s1 >>> 24] ^ T1[(s2 >>> 16) & 0xff] ^ T2[(s3 >>> 8) & 0xff] ^ T3[s0 & 0xff] ^ rk[k + 1];
+            int t2 = T0[s2 >>> 24] ^ T1[(s3 >>> 16) & 0xff] ^ T2[(s0 >>> 8) & 0xff] ^ T3[s1 & 0xff] ^ rk[k + 2];
+            int t3 = T0[s3 >>> 24] ^ T1[(s0 >>> 16) & 0xff] ^ T2[(s1 >>> 8) & 0xff] ^ T3[s2 & 0xff] ^ rk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        writeInt(lastRound(s0, s1, s2, s3) ^ rk[k], _out, _outOffset);
+        writeInt(lastRound(s1, s2, s3, s0) ^ rk[k + 1], _out, _outOffset + 4);
+        writeInt(lastRound(s2, s3, s0, s1) ^ rk[k + 2], _out, _outOffset + 8);
+        writeInt(lastRound(s3, s0, s1, s2) ^ rk[k + 3], _out, _outOffset + 12);
+    }
+
+    private static int lastRound(int _a, int _b, int _c, int _d) {
+        return (SBOX[_a >>> 24] & 0xff) << 24
+                | (SBOX[(_b >>> 16) & 0xff] & 0xff) << 16
+                | (SBOX[(_c >>> 8) & 0xff] & 0xff) << 8
+                | (SBOX[_d & 0xff] & 0xff);
+    }
+
+    private static int subWord(int _w) {
+        return lastRound(_w, _w, _w, _w);
+    }
+
+    private static int xtime(int _b) {
+        return ((_b << 1) ^ ((_b & 0x80) != 0 ? 0x1b : 0)) & 0xff;
+    }
+
+    private static int rotl8(int _b, int _n) {
+        return ((_b << _n) | (_b >>> (8 - _n))) & 0xff;
+    }
+
+    private static int readInt(byte[] _b, int _offset) {
+        return (_b[_offset] & 0xff) << 24 | (_b[_offset + 1] & 0xff) << 16 | (_b[_offset + 2] & 0xff) << 8 | (_b[_offset + 3] & 0xff);
+    }
+
+    private static void writeInt(int _v, byte[] _b, int _offset) {
+        _b[_offset] = (byte) (_v >>> 24);
+        _b[_offset + 1] = (byte) (_v >>> 16);
+        _b[_offset + 2] = (byte) (_v >>> 8);
+        _b[_offset + 3] = (byte) _v;
+    }
+
+}
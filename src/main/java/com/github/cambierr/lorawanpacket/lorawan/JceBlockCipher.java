@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link BlockCipher} backed by the JCE "AES/ECB/NoPadding" transformation,
+ * which uses AES-NI when the JVM supports it.
+ *
+ * @author cambierr
+ */
+public class JceBlockCipher implements BlockCipher {
+
+    private final Cipher cipher;
+
+    public JceBlockCipher() {
+        try {
+            cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
+            throw new RuntimeException("Could not initialize AES", ex);
+        }
+    }
+
+    @Override
+    public void init(byte[] _key) {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(_key, "AES"));
+        } catch (InvalidKeyException ex) {
+            throw new IllegalArgumentException("invalid AES key", ex);
+        }
+    }
+
+    @Override
+    public void encryptBlock(byte[] _in, int _inOffset, byte[] _out, int _outOffset) {
+        encrypt(_in, _inOffset, 16, _out, _outOffset);
+    }
+
+    @Override
+    public void encrypt(byte[] _in, int _inOffset, int _length, byte[] _out, int _outOffset) {
+        if (_length % 16 != 0) {
+            throw new IllegalArgumentException("length must be a multiple of 16");
+        }
+        try {
+            cipher.update(_in, _inOffset, _length, _out, _outOffset);
+        } catch (ShortBufferException ex) {
+            throw new IllegalArgumentException("output too short", ex);
+        }
+    }
+
+}
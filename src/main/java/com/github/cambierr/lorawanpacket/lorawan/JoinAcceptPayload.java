@@ -25,16 +25,12 @@ package com.github.cambierr.lorawanpacket.lorawan;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
  *
@@ -46,7 +42,7 @@ public class JoinAcceptPayload implements FRMPayload {
     private byte[] payload;
     private JoinAcceptClearPayload clear;
 
-    private byte[] appKey;
+    private SessionCrypto appKey;
 
     public JoinAcceptPayload(MacPayload _mac, ByteBuffer _raw) throws MalformedPacketException {
         if (_raw.remaining() < 16) {
@@ -91,15 +87,9 @@ public class JoinAcceptPayload implements FRMPayload {
         a.order(ByteOrder.LITTLE_ENDIAN);
         a.put(payload);
         a.put(mac.getPhyPayload().getMic());
-        try {
-            Key aesKey = new SecretKeySpec(appKey, "AES");
-            Cipher cipher = Cipher.getInstance("AES");
-            cipher.init(Cipher.ENCRYPT_MODE, aesKey);
-            byte[] s = cipher.doFinal(a.array());
-            clear = new JoinAcceptClearPayload(s);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException | BadPaddingException ex) {
-            throw new RuntimeException("Could not decrypt payload", ex);
-        }
+        byte[] s = new byte[a.capacity()];
+        appKey.encrypt(a.array(), 0, s.length, s, 0);
+        clear = new JoinAcceptClearPayload(s);
     }
 
     private void encryptPayload() {
@@ -110,16 +100,10 @@ public class JoinAcceptPayload implements FRMPayload {
         a.order(ByteOrder.LITTLE_ENDIAN);
         clear.toRaw(a);
         a.put(clear.computeMic());
-        try {
-            Key aesKey = new SecretKeySpec(appKey, "AES");
-            Cipher cipher = Cipher.getInstance("AES");
-            cipher.init(Cipher.DECRYPT_MODE, aesKey);
-            byte[] s = cipher.doFinal(a.array());
-            payload = Arrays.copyOf(s, s.length - 4);
-            mac.getPhyPayload().setMic(Arrays.copyOfRange(s, s.length - 4, s.length));
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException | BadPaddingException ex) {
-            throw new RuntimeException("Could not encrypt payload", ex);
-        }
+        byte[] s = new byte[a.capacity()];
+        appKey.decrypt(a.array(), 0, s.length, s, 0);
+        payload = Arrays.copyOf(s, s.length - 4);
+        mac.getPhyPayload().setMic(Arrays.copyOfRange(s, s.length - 4, s.length));
     }
 
     public JoinAcceptClearPayload getClearPayload() throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
@@ -133,11 +117,23 @@ public class JoinAcceptPayload implements FRMPayload {
         if (clear != null && payload != null) {
             throw new RuntimeException("Both encrypted and clear payloads exists. AppKey can not be changed");
         }
-        appKey = _appKey;
+        appKey = _appKey == null ? null : new SessionCrypto(_appKey);
         return this;
     }
 
     public byte[] getAppKey() {
+        return appKey == null ? null : appKey.getKey();
+    }
+
+    public JoinAcceptPayload setAppKeyCrypto(SessionCrypto _appKey) {
+        if (clear != null && payload != null) {
+            throw new RuntimeException("Both encrypted and clear payloads exists. AppKey can not be changed");
+        }
+        appKey = _appKey;
+        return this;
+    }
+
+    public SessionCrypto getAppKeyCrypto() {
         return appKey;
     }
 
@@ -162,8 +158,8 @@ public class JoinAcceptPayload implements FRMPayload {
         private byte[] devAddr = new byte[4];
         private byte dlSettings;
         private byte rxDelay;
-        private byte[] cfList;
-        private byte[] mic;
+        private byte[] cfList = new byte[0];
+        private byte[] mic = new byte[4];
 
         public JoinAcceptClearPayload() {
 
@@ -211,6 +207,28 @@ public class JoinAcceptPayload implements FRMPayload {
             return this;
         }
 
+        /**
+         * @return the 24 bits NetID, read little-endian
+         */
+        public int getNetIdInt() {
+            return Identifiers.netId(netId);
+        }
+
+        public JoinAcceptClearPayload setNetId(int _netId) {
+            return setNetId(Identifiers.netId(_netId));
+        }
+
+        /**
+         * @return the DevAddr, read little-endian
+         */
+        public int getDevAddrInt() {
+            return Identifiers.devAddr(devAddr);
+        }
+
+        public JoinAcceptClearPayload setDevAddr(int _devAddr) {
+            return setDevAddr(Identifiers.devAddr(_devAddr));
+        }
+
         public byte getDlSettings() {
             return dlSettings;
         }
@@ -264,18 +282,12 @@ public class JoinAcceptPayload implements FRMPayload {
             //size = mhdr + length()
             ByteBuffer body = ByteBuffer.allocate(1 + length());
             body.order(ByteOrder.LITTLE_ENDIAN);
-            toRaw(body);
             body.put(mac.getPhyPayload().getMHDR());
+            toRaw(body);
 
-            AesCmac aesCmac;
-            try {
-                aesCmac = new AesCmac();
-                aesCmac.init(new SecretKeySpec(appKey, "AES"));
-                aesCmac.updateBlock(body.array());
-                return Arrays.copyOfRange(aesCmac.doFinal(), 0, 4);
-            } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
-                throw new RuntimeException("Could not compute AesCmac", ex);
-            }
+            AesCmac aesCmac = appKey.getCmac();
+            aesCmac.updateBlock(body.array());
+            return Arrays.copyOfRange(aesCmac.doFinal(), 0, 4);
         }
     }
 
@@ -25,11 +25,7 @@ package com.github.cambierr.lorawanpacket.lorawan;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
  *
@@ -42,7 +38,7 @@ public class JoinRequestPayload implements FRMPayload {
     private byte[] devEUI = new byte[8];
     private byte[] devNonce = new byte[2];
 
-    private byte[] appKey;
+    private SessionCrypto appKey;
 
     public JoinRequestPayload(MacPayload _mac, ByteBuffer _raw) throws MalformedPacketException {
         if (_raw.remaining() < 22) {
@@ -70,15 +66,9 @@ public class JoinRequestPayload implements FRMPayload {
         body.put(mac.getPhyPayload().getMHDR());
         toRaw(body);
 
-        AesCmac aesCmac;
-        try {
-            aesCmac = new AesCmac();
-            aesCmac.init(new SecretKeySpec(appKey, "AES"));
-            aesCmac.updateBlock(body.array());
-            return Arrays.copyOfRange(aesCmac.doFinal(), 0, 4);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
-            throw new RuntimeException("Could not compute AesCmac", ex);
-        }
+        AesCmac aesCmac = appKey.getCmac();
+        aesCmac.updateBlock(body.array());
+        return Arrays.copyOfRange(aesCmac.doFinal(), 0, 4);
     }
 
     @Override
@@ -121,6 +111,30 @@ public class JoinRequestPayload implements FRMPayload {
         return this;
     }
 
+    /**
+     * @return the AppEUI, read little-endian
+     */
+    public long getAppEUILong() {
+        return Identifiers.eui(appEUI);
+    }
+
+    public JoinRequestPayload setAppEUI(long _appEUI) {
+        this.appEUI = Identifiers.eui(_appEUI);
+        return this;
+    }
+
+    /**
+     * @return the DevEUI, read little-endian
+     */
+    public long getDevEUILong() {
+        return Identifiers.eui(devEUI);
+    }
+
+    public JoinRequestPayload setDevEUI(long _devEUI) {
+        this.devEUI = Identifiers.eui(_devEUI);
+        return this;
+    }
+
     public byte[] getDevNonce() {
         return devNonce;
     }
@@ -131,11 +145,20 @@ public class JoinRequestPayload implements FRMPayload {
     }
 
     public JoinRequestPayload setAppKey(byte[] _appKey) {
-        appKey = _appKey;
+        appKey = _appKey == null ? null : new SessionCrypto(_appKey);
         return this;
     }
 
     public byte[] getAppKey() {
+        return appKey == null ? null : appKey.getKey();
+    }
+
+    public JoinRequestPayload setAppKeyCrypto(SessionCrypto _appKey) {
+        appKey = _appKey;
+        return this;
+    }
+
+    public SessionCrypto getAppKeyCrypto() {
         return appKey;
     }
 
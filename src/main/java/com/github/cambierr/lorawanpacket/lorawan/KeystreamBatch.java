@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FRMPayload keystreams for many (direction, DevAddr, FCnt) tuples sharing a
+ * key, generated with a single cipher call: tuples are {@link #add added},
+ * the whole batch is {@link #generate generated}, then each entry encrypts
+ * or decrypts its frame. A batch can be {@link #clear cleared} and reused.
+ *
+ * @author cambierr
+ */
+public class KeystreamBatch {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final int blocksPerFrame;
+    private final byte[] blocks;
+    private int count;
+    private boolean generated;
+
+    /**
+     * @param _capacity maximum number of tuples
+     * @param _maxPayloadLength longest FRMPayload the keystreams must cover
+     */
+    public KeystreamBatch(int _capacity, int _maxPayloadLength) {
+        if (_capacity < 1 || _maxPayloadLength < 1 || _maxPayloadLength > 255 * BLOCK_SIZE) {
+            throw new IllegalArgumentException("invalid batch size");
+        }
+        blocksPerFrame = (_maxPayloadLength + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blocks = new byte[_capacity * blocksPerFrame * BLOCK_SIZE];
+    }
+
+    /**
+     * @param _fCnt the full 32 bits frame counter
+     * @return the index of the tuple in this batch
+     */
+    public int add(Direction _dir, int _devAddr, int _fCnt) {
+        if (generated) {
+            throw new RuntimeException("batch already generated");
+        }
+        if (count == capacity()) {
+            throw new RuntimeException("batch is full");
+        }
+        int offset = count * blocksPerFrame * BLOCK_SIZE;
+        for (int i = 1; i <= blocksPerFrame; i++) {
+            SessionCrypto.fillA(blocks, offset, _dir, _devAddr, _fCnt, i);
+            offset += BLOCK_SIZE;
+        }
+        return count++;
+    }
+
+    /**
+     * Replaces every A block by its keystream block, in one call to _key.
+     */
+    public KeystreamBatch generate(SessionCrypto _key) {
+        if (generated) {
+            throw new RuntimeException("batch already generated");
+        }
+        _key.encrypt(blocks, 0, count * blocksPerFrame * BLOCK_SIZE, blocks, 0);
+        generated = true;
+        return this;
+    }
+
+    /**
+     * Encrypts or decrypts a payload in place with the keystream of tuple
+     * _index. The position of _data is not modified.
+     */
+    public void cipherPayload(int _index, ByteBuffer _data, int _offset, int _length) {
+        int stream = streamOffset(_index, _length);
+        for (int i = 0; i < _length; i++) {
+            _data.put(_offset + i, (byte) (_data.get(_offset + i) ^ blocks[stream + i]));
+        }
+    }
+
+    /**
+     * Array variant; _in and _out may be the same array.
+     */
+    public void cipherPayload(int _index, byte[] _in, int _inOffset, byte[] _out, int _outOffset, int _length) {
+        int stream = streamOffset(_index, _length);
+        for (int i = 0; i < _length; i++) {
+            _out[_outOffset + i] = (byte) (_in[_inOffset + i] ^ blocks[stream + i]);
+        }
+    }
+
+    private int streamOffset(int _index, int _length) {
+        if (!generated) {
+            throw new RuntimeException("batch not generated");
+        }
+        if (_index < 0 || _index >= count) {
+            throw new IllegalArgumentException("no such tuple");
+        }
+        if (_length > blocksPerFrame * BLOCK_SIZE) {
+            throw new IllegalArgumentException("payload longer than the batch keystreams");
+        }
+        return _index * blocksPerFrame * BLOCK_SIZE;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return blocks.length / (blocksPerFrame * BLOCK_SIZE);
+    }
+
+    public int getMaxPayloadLength() {
+        return blocksPerFrame * BLOCK_SIZE;
+    }
+
+    public KeystreamBatch clear() {
+        count = 0;
+        generated = false;
+        return this;
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the keystreams of the next frame counters of one (direction,
+ * DevAddr) stream ready, so that encrypting a downlink (a multicast group or
+ * a Class C queue) is only a XOR on the critical path. Keystreams are
+ * generated as a {@link KeystreamBatch} on an executor, with a private copy
+ * of the key, and the next window is requested once half of the current one
+ * has been used.
+ *
+ * Callers fall back to {@link SessionCrypto#cipherPayload} when a counter is
+ * not covered. Any thread may use an instance.
+ *
+ * @author cambierr
+ */
+public class KeystreamPrefetcher {
+
+    private final SessionCrypto crypto;
+    private final Direction direction;
+    private final int devAddr;
+    private final int maxPayloadLength;
+    private final int window;
+    private final Executor executor;
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile Window ready;
+
+    /**
+     * @param _window number of consecutive frame counters per batch
+     */
+    public KeystreamPrefetcher(byte[] _key, Direction _dir, int _devAddr, int _maxPayloadLength, int _window, Executor _executor) {
+        if (_window < 1) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        crypto = new SessionCrypto(_key);
+        direction = _dir;
+        devAddr = _devAddr;
+        maxPayloadLength = _maxPayloadLength;
+        window = _window;
+        executor = _executor;
+    }
+
+    /**
+     * Schedules the generation of the keystreams for _fCnt and the following
+     * counters, unless a generation is already running.
+     *
+     * @return true if a generation was scheduled
+     */
+    public boolean prefetch(int _fCnt) {
+        if (!pending.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    KeystreamBatch batch = new KeystreamBatch(window, maxPayloadLength);
+                    for (int i = 0; i < window; i++) {
+                        batch.add(direction, devAddr, _fCnt + i);
+                    }
+                    ready = new Window(_fCnt, batch.generate(crypto));
+                } finally {
+                    pending.set(false);
+                }
+            });
+        } catch (RuntimeException ex) {
+            pending.set(false);
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the keystream of _fCnt is available
+     */
+    public boolean isReady(int _fCnt) {
+        Window current = ready;
+        return current != null && current.covers(_fCnt);
+    }
+
+    /**
+     * Encrypts or decrypts a payload in place with a prefetched keystream.
+     *
+     * @param _fCnt the full 32 bits frame counter
+     * @return false, without touching _data, if _fCnt is not prefetched
+     */
+    public boolean cipherPayload(int _fCnt, ByteBuffer _data, int _offset, int _length) {
+        Window current = ready;
+        if (current == null || !current.covers(_fCnt)) {
+            return false;
+        }
+        current.batch.cipherPayload(_fCnt - current.firstFCnt, _data, _offset, _length);
+        used(current, _fCnt);
+        return true;
+    }
+
+    /**
+     * Array variant; _in and _out may be the same array.
+     */
+    public boolean cipherPayload(int _fCnt, byte[] _in, int _inOffset, byte[] _out, int _outOffset, int _length) {
+        Window current = ready;
+        if (current == null || !current.covers(_fCnt)) {
+            return false;
+        }
+        current.batch.cipherPayload(_fCnt - current.firstFCnt, _in, _inOffset, _out, _outOffset, _length);
+        used(current, _fCnt);
+        return true;
+    }
+
+    private void used(Window _current, int _fCnt) {
+        if (_fCnt - _current.firstFCnt >= window / 2) {
+            prefetch(_fCnt + 1);
+        }
+    }
+
+    private static final class Window {
+
+        private final int firstFCnt;
+        private final KeystreamBatch batch;
+
+        private Window(int _firstFCnt, KeystreamBatch _batch) {
+            firstFCnt = _firstFCnt;
+            batch = _batch;
+        }
+
+        private boolean covers(int _fCnt) {
+            // unsigned distance, so that the 32 bits counter may wrap
+            return Integer.compareUnsigned(_fCnt - firstFCnt, batch.size()) < 0;
+        }
+    }
+
+}
@@ -29,65 +29,44 @@ package com.github.cambierr.lorawanpacket.lorawan;
  */
 public enum MType {
 
-    JOIN_REQUEST((byte) 0x00, JoinRequestPayload.class, Direction.UP),
-    JOIN_ACCEPT((byte) 0x01, JoinAcceptPayload.class, Direction.DOWN),
-    UNCONF_DATA_UP((byte) 0x02, DataPayload.class, Direction.UP),
-    UNCONF_DATA_DOWN((byte) 0x03, DataPayload.class, Direction.DOWN),
-    CONF_DATA_UP((byte) 0x04, DataPayload.class, Direction.UP),
-    CONF_DATA_DOWN((byte) 0x05, DataPayload.class, Direction.DOWN),
-    RFU((byte) 0x06, RFUPayload.class, null),
-    PROPRIETARY((byte) 0x07, ProprietaryPayload.class, null);
+    JOIN_REQUEST((byte) 0x00, Direction.UP),
+    JOIN_ACCEPT((byte) 0x01, Direction.DOWN),
+    UNCONF_DATA_UP((byte) 0x02, Direction.UP),
+    UNCONF_DATA_DOWN((byte) 0x03, Direction.DOWN),
+    CONF_DATA_UP((byte) 0x04, Direction.UP),
+    CONF_DATA_DOWN((byte) 0x05, Direction.DOWN),
+    RFU((byte) 0x06, null),
+    PROPRIETARY((byte) 0x07, null);
 
-    private MType(byte _value, Class<? extends FRMPayload> _mapper, Direction _direction) {
+    private static final MType[] BY_VALUE = new MType[8];
+
+    static {
+        for (MType v : values()) {
+            BY_VALUE[v.value] = v;
+        }
+    }
+
+    private MType(byte _value, Direction _direction) {
         value = _value;
-        mapper = _mapper;
         direction = _direction;
     }
 
     private final byte value;
-    private final Class<? extends FRMPayload> mapper;
     private final Direction direction;
 
     public static MType from(byte _mhdr) throws MalformedPacketException {
-        byte mType = (byte) ((_mhdr >> 5) & 0x07);
-        for (MType v : values()) {
-            if (v.value == mType) {
-                return v;
-            }
-        }
-        throw new MalformedPacketException("MType");
-    }
-    
-    public Direction getDirection(){
-        return direction;
+        return lookup(_mhdr);
     }
 
-    public Class<? extends FRMPayload> getMapper() {
-        if (mapper.equals(RFUPayload.class)) {
-            if (rfuMapper == null) {
-                throw new RuntimeException("Missing mapper for MType " + name());
-            } else {
-                return rfuMapper;
-            }
-        }
-        if (mapper.equals(ProprietaryPayload.class)) {
-            if (proprietaryMapper == null) {
-                throw new RuntimeException("Missing mapper for MType " + name());
-            } else {
-                return proprietaryMapper;
-            }
-        }
-        return mapper;
+    static MType lookup(byte _mhdr) {
+        return BY_VALUE[(_mhdr >> 5) & 0x07];
     }
 
-    private static Class<? extends RFUPayload> rfuMapper;
-    private static Class<? extends ProprietaryPayload> proprietaryMapper;
-
-    public void setRfuPayloadMapper(Class<? extends RFUPayload> _handler) {
-        rfuMapper = _handler;
+    public Direction getDirection() {
+        return direction;
     }
 
-    public void setProprietaryPayloadMapper(Class<? extends ProprietaryPayload> _handler) {
-        proprietaryMapper = _handler;
+    public byte getValue() {
+        return value;
     }
 }
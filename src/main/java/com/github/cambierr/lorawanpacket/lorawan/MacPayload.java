@@ -23,7 +23,6 @@
  */
 package com.github.cambierr.lorawanpacket.lorawan;
 
-import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -39,6 +38,10 @@ public class MacPayload {
     private PhyPayload phy;
 
     public MacPayload(PhyPayload _phy, ByteBuffer _raw) throws MalformedPacketException {
+        this(_phy, _raw, PayloadRegistry.getDefault());
+    }
+
+    public MacPayload(PhyPayload _phy, ByteBuffer _raw, PayloadRegistry _registry) throws MalformedPacketException {
         phy = _phy;
         _raw.order(ByteOrder.LITTLE_ENDIAN);
         if (_raw.remaining() < 1) {
@@ -48,12 +51,7 @@ public class MacPayload {
         //bigger than 4, since the MIC if after
         if (_raw.remaining() > 4) {
             fPort = _raw.get();
-            Class<? extends FRMPayload> mapper = phy.getMType().getMapper();
-            try {
-                payload = mapper.getConstructor(MacPayload.class, ByteBuffer.class).newInstance(this, _raw);
-            } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                throw new RuntimeException("Could not create FRMPayload", ex);
-            }
+            payload = _registry.get(phy.getMType()).create(this, _raw);
         } else {
             fPort = 0;
             payload = null;
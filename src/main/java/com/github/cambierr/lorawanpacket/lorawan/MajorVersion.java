@@ -38,13 +38,28 @@ public enum MajorVersion {
     }
 
     public static MajorVersion from(byte _mhdr) throws MalformedPacketException {
+        MajorVersion v = lookup(_mhdr);
+        if (v == null) {
+            throw new MalformedPacketException("Major");
+        }
+        return v;
+    }
+
+    /**
+     * @return the two MHDR bits of this version
+     */
+    byte bits() {
+        return (byte) (-identifier & 0x03);
+    }
+
+    static MajorVersion lookup(byte _mhdr) {
         byte mVersion = (byte) -(_mhdr & 0x03);
         for (MajorVersion v : values()) {
             if (v.identifier == mVersion) {
                 return v;
             }
         }
-        throw new MalformedPacketException("Major");
+        return null;
     }
 
 }
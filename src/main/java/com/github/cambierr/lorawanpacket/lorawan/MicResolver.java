@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds which of several sessions sharing a DevAddr an uplink belongs to by
+ * trying their NwkSKey against its MIC. The B0 block is built once per frame
+ * and every candidate only runs the CMAC; the first match stops the search.
+ * Above a configurable number of candidates, they are tried in parallel on a
+ * {@link ForkJoinPool}: each candidate context is then used by one worker, so
+ * none of them may be in use elsewhere during the call.
+ *
+ * An instance keeps a scratch B0 block and must not be shared between
+ * threads.
+ *
+ * @author cambierr
+ */
+public class MicResolver {
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final byte[] b0 = new byte[16];
+
+    /**
+     * Sequential resolver.
+     */
+    public MicResolver() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param _pool the pool candidates are tried on
+     * @param _parallelThreshold minimum number of candidates before using the
+     * pool
+     */
+    public MicResolver(ForkJoinPool _pool, int _parallelThreshold) {
+        if (_pool == null && _parallelThreshold != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a pool is required for parallel resolution");
+        }
+        if (_parallelThreshold < 2) {
+            throw new IllegalArgumentException("parallelThreshold must be at least 2");
+        }
+        pool = _pool;
+        parallelThreshold = _parallelThreshold;
+    }
+
+    /**
+     * Uses the 16 bits frame counter of the header.
+     *
+     * @see #resolve(PhyPayloadView, int, SessionCrypto[], int)
+     */
+    public int resolve(PhyPayloadView _frame, SessionCrypto[] _candidates, int _count) throws MalformedPacketException {
+        return resolve(_frame, _frame.getfCnt() & 0xffff, _candidates, _count);
+    }
+
+    /**
+     * @param _frame the received data frame
+     * @param _fCnt the full 32 bits frame counter
+     * @param _candidates NwkSKey contexts of the sessions using the DevAddr
+     * @param _count number of candidates to try, from index 0
+     * @return the index of a candidate whose key validates the MIC, or -1
+     */
+    public int resolve(PhyPayloadView _frame, int _fCnt, SessionCrypto[] _candidates, int _count) throws MalformedPacketException {
+        MType type = _frame.getMType();
+        if (type.getDirection() == null || type == MType.JOIN_REQUEST || type == MType.JOIN_ACCEPT) {
+            throw new MalformedPacketException("not a data frame");
+        }
+        if (_count > _candidates.length) {
+            throw new IllegalArgumentException("count exceeds the number of candidates");
+        }
+        int msgLength = _frame.getLength() - 4;
+        SessionCrypto.fillB0(b0, type.getDirection(), _frame.getDevAddr(), _fCnt, msgLength);
+
+        if (_count < parallelThreshold) {
+            return trySequential(_frame.getBuffer(), _frame.getOffset(), msgLength, _frame.getMic(), _candidates, 0, _count);
+        }
+        AtomicInteger found = new AtomicInteger(-1);
+        pool.invoke(new Trial(_frame.getBuffer(), _frame.getOffset(), msgLength, _frame.getMic(), _candidates, 0, _count, found));
+        return found.get();
+    }
+
+    private int trySequential(ByteBuffer _msg, int _offset, int _length, int _mic, SessionCrypto[] _candidates, int _from, int _to) {
+        for (int i = _from; i < _to; i++) {
+            if (_candidates[i].computeMic(b0, _msg, _offset, _length) == _mic) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final class Trial extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 4;
+
+        private final ByteBuffer msg;
+        private final int offset;
+        private final int length;
+        private final int mic;
+        private final SessionCrypto[] candidates;
+        private final int from;
+        private final int to;
+        private final AtomicInteger found;
+
+        private Trial(ByteBuffer _msg, int _offset, int _length, int _mic, SessionCrypto[] _candidates, int _from, int _to, AtomicInteger _found) {
+            msg = _msg;
+            offset = _offset;
+            length = _length;
+            mic = _mic;
+            candidates = _candidates;
+            from = _from;
+            to = _to;
+            found = _found;
+        }
+
+        @Override
+        protected void compute() {
+            if (found.get() >= 0) {
+                return;
+            }
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Trial(msg, offset, length, mic, candidates, from, middle, found),
+                        new Trial(msg, offset, length, mic, candidates, middle, to, found));
+                return;
+            }
+            for (int i = from; i < to && found.get() < 0; i++) {
+                if (candidates[i].computeMic(b0, msg, offset, length) == mic) {
+                    found.compareAndSet(-1, i);
+                    return;
+                }
+            }
+        }
+    }
+
+}
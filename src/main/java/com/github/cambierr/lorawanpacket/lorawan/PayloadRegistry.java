@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+/**
+ * Maps each of the 8 MType values to the factory decoding its FRMPayload.
+ * RFU and proprietary decoders are registered per instance; the shared
+ * default registry only knows the standard payloads and can not be modified.
+ *
+ * @author cambierr
+ */
+public class PayloadRegistry {
+
+    private static final PayloadRegistry DEFAULT = new PayloadRegistry(true);
+
+    private final FRMPayloadFactory[] factories = new FRMPayloadFactory[8];
+    private final boolean locked;
+
+    public PayloadRegistry() {
+        this(false);
+    }
+
+    private PayloadRegistry(boolean _locked) {
+        factories[MType.JOIN_REQUEST.ordinal()] = JoinRequestPayload::new;
+        factories[MType.JOIN_ACCEPT.ordinal()] = JoinAcceptPayload::new;
+        factories[MType.UNCONF_DATA_UP.ordinal()] = DataPayload::new;
+        factories[MType.UNCONF_DATA_DOWN.ordinal()] = DataPayload::new;
+        factories[MType.CONF_DATA_UP.ordinal()] = DataPayload::new;
+        factories[MType.CONF_DATA_DOWN.ordinal()] = DataPayload::new;
+        locked = _locked;
+    }
+
+    public static PayloadRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @throws MalformedPacketException if no decoder is registered for
+     * _mType, as for RFU and proprietary frames in the default registry
+     */
+    public FRMPayloadFactory get(MType _mType) throws MalformedPacketException {
+        FRMPayloadFactory factory = factories[_mType.ordinal()];
+        if (factory == null) {
+            throw new MalformedPacketException("Missing mapper for MType " + _mType.name());
+        }
+        return factory;
+    }
+
+    public PayloadRegistry setRfuPayloadFactory(FRMPayloadFactory _factory) {
+        return set(MType.RFU, _factory);
+    }
+
+    public PayloadRegistry setProprietaryPayloadFactory(FRMPayloadFactory _factory) {
+        return set(MType.PROPRIETARY, _factory);
+    }
+
+    private PayloadRegistry set(MType _mType, FRMPayloadFactory _factory) {
+        if (locked) {
+            throw new RuntimeException("The default registry can not be modified");
+        }
+        factories[_mType.ordinal()] = _factory;
+        return this;
+    }
+
+}
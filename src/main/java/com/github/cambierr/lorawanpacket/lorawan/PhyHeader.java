@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Static accessors reading header fields of a PHYPayload straight from a
+ * buffer, for routing decisions that do not need a {@link PhyPayload}. They
+ * use absolute reads and never throw on a frame accepted by
+ * {@link #isDataFrame(ByteBuffer, int, int)}.
+ *
+ * @author cambierr
+ */
+public final class PhyHeader {
+
+    private PhyHeader() {
+    }
+
+    /**
+     * True if [_offset, _offset + _length) is long enough to hold a data
+     * frame with its FOpts and MIC.
+     */
+    public static boolean isDataFrame(ByteBuffer _raw, int _offset, int _length) {
+        if (_length < 12 || _offset < 0 || _offset + _length > _raw.limit()) {
+            return false;
+        }
+        switch (mType(_raw, _offset)) {
+            case UNCONF_DATA_UP:
+            case UNCONF_DATA_DOWN:
+            case CONF_DATA_UP:
+            case CONF_DATA_DOWN:
+                return 8 + fOptsLength(_raw, _offset) + 4 <= _length;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean isDataFrame(ByteBuffer _raw) {
+        return isDataFrame(_raw, _raw.position(), _raw.remaining());
+    }
+
+    public static MType mType(ByteBuffer _raw, int _offset) {
+        return MType.lookup(_raw.get(_offset));
+    }
+
+    public static MType mType(ByteBuffer _raw) {
+        return mType(_raw, _raw.position());
+    }
+
+    /**
+     * @return the major version, or null if it is not supported
+     */
+    public static MajorVersion majorVersion(ByteBuffer _raw, int _offset) {
+        return MajorVersion.lookup(_raw.get(_offset));
+    }
+
+    public static MajorVersion majorVersion(ByteBuffer _raw) {
+        return majorVersion(_raw, _raw.position());
+    }
+
+    public static int devAddr(ByteBuffer _raw, int _offset) {
+        return intLE(_raw, _offset + 1);
+    }
+
+    public static int devAddr(ByteBuffer _raw) {
+        return devAddr(_raw, _raw.position());
+    }
+
+    public static byte fCtrl(ByteBuffer _raw, int _offset) {
+        return _raw.get(_offset + 5);
+    }
+
+    public static byte fCtrl(ByteBuffer _raw) {
+        return fCtrl(_raw, _raw.position());
+    }
+
+    public static int fOptsLength(ByteBuffer _raw, int _offset) {
+        return fCtrl(_raw, _offset) & 0xf;
+    }
+
+    public static int fOptsLength(ByteBuffer _raw) {
+        return fOptsLength(_raw, _raw.position());
+    }
+
+    /**
+     * @return the 16 bits FCnt as an unsigned value
+     */
+    public static int fCnt(ByteBuffer _raw, int _offset) {
+        return (_raw.get(_offset + 6) & 0xff) | (_raw.get(_offset + 7) & 0xff) << 8;
+    }
+
+    public static int fCnt(ByteBuffer _raw) {
+        return fCnt(_raw, _raw.position());
+    }
+
+    /**
+     * @return the FPort as an unsigned value, or -1 if the frame has none
+     */
+    public static int fPort(ByteBuffer _raw, int _offset, int _length) {
+        int index = _offset + 8 + fOptsLength(_raw, _offset);
+        if (_offset + _length - index <= 4) {
+            return -1;
+        }
+        return _raw.get(index) & 0xff;
+    }
+
+    public static int fPort(ByteBuffer _raw) {
+        return fPort(_raw, _raw.position(), _raw.remaining());
+    }
+
+    public static int mic(ByteBuffer _raw, int _offset, int _length) {
+        return intLE(_raw, _offset + _length - 4);
+    }
+
+    public static int mic(ByteBuffer _raw) {
+        return mic(_raw, _raw.position(), _raw.remaining());
+    }
+
+    static int intLE(ByteBuffer _raw, int _index) {
+        return (_raw.get(_index) & 0xff)
+                | (_raw.get(_index + 1) & 0xff) << 8
+                | (_raw.get(_index + 2) & 0xff) << 16
+                | (_raw.get(_index + 3) & 0xff) << 24;
+    }
+
+}
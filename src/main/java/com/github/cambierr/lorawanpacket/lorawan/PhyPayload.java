@@ -37,12 +37,16 @@ public class PhyPayload {
     private byte[] mic = new byte[4];
 
     public PhyPayload(ByteBuffer _raw) throws MalformedPacketException {
+        this(_raw, PayloadRegistry.getDefault());
+    }
+
+    public PhyPayload(ByteBuffer _raw, PayloadRegistry _registry) throws MalformedPacketException {
         _raw.order(ByteOrder.LITTLE_ENDIAN);
         if (_raw.remaining() < 12) {
             throw new MalformedPacketException();
         }
         mhdr = _raw.get();
-        macPayload = new MacPayload(this, _raw);
+        macPayload = new MacPayload(this, _raw, _registry);
         _raw.get(mic);
     }
 
@@ -75,6 +79,10 @@ public class PhyPayload {
         return this;
     }
 
+    public int length() throws MalformedPacketException {
+        return 1 + macPayload.length() + mic.length;
+    }
+
     public void toRaw(ByteBuffer _bb) throws MalformedPacketException {
         _bb.order(ByteOrder.LITTLE_ENDIAN);
         _bb.put(mhdr);
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over the raw bytes of a PHYPayload. Nothing is copied: every
+ * field is read from the wrapped buffer at its computed offset, and a single
+ * instance can be re-targeted with {@link #wrap} for every frame. Only
+ * {@link #cipherPayload} writes to the buffer.
+ *
+ * @author cambierr
+ */
+public class PhyPayloadView {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public PhyPayloadView() {
+    }
+
+    public PhyPayloadView(ByteBuffer _raw) throws MalformedPacketException {
+        wrap(_raw, _raw.position(), _raw.remaining());
+    }
+
+    public final PhyPayloadView wrap(ByteBuffer _raw, int _offset, int _length) throws MalformedPacketException {
+        if (_length < 12) {
+            throw new MalformedPacketException();
+        }
+        if (_offset < 0 || _offset + _length > _raw.limit()) {
+            throw new MalformedPacketException("out of bounds");
+        }
+        switch (PhyHeader.mType(_raw, _offset)) {
+            case UNCONF_DATA_UP:
+            case UNCONF_DATA_DOWN:
+            case CONF_DATA_UP:
+            case CONF_DATA_DOWN:
+                // FCtrl only exists in data frames
+                if (8 + PhyHeader.fOptsLength(_raw, _offset) + 4 > _length) {
+                    throw new MalformedPacketException("fOpts");
+                }
+                break;
+            default:
+                break;
+        }
+        buffer = _raw;
+        offset = _offset;
+        length = _length;
+        return this;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte getMHDR() {
+        return buffer.get(offset);
+    }
+
+    public MType getMType() throws MalformedPacketException {
+        return MType.from(getMHDR());
+    }
+
+    public MajorVersion getMajorVersion() throws MalformedPacketException {
+        return MajorVersion.from(getMHDR());
+    }
+
+    public int getDevAddr() {
+        return PhyHeader.devAddr(buffer, offset);
+    }
+
+    public byte getfCtrl() {
+        return PhyHeader.fCtrl(buffer, offset);
+    }
+
+    public short getfCnt() {
+        return (short) PhyHeader.fCnt(buffer, offset);
+    }
+
+    public int getfOptsOffset() {
+        return offset + 8;
+    }
+
+    public int getfOptsLength() {
+        return PhyHeader.fOptsLength(buffer, offset);
+    }
+
+    public boolean hasfPort() {
+        return length - 8 - getfOptsLength() > 4;
+    }
+
+    public byte getfPort() {
+        if (!hasfPort()) {
+            return 0;
+        }
+        return buffer.get(offset + 8 + getfOptsLength());
+    }
+
+    public int getPayloadOffset() {
+        return offset + 9 + getfOptsLength();
+    }
+
+    public int getPayloadLength() {
+        if (!hasfPort()) {
+            return 0;
+        }
+        return getMicOffset() - getPayloadOffset();
+    }
+
+    public int getMicOffset() {
+        return offset + length - 4;
+    }
+
+    public int getMic() {
+        return PhyHeader.mic(buffer, offset, length);
+    }
+
+    /**
+     * Computes the MIC of the wrapped frame straight from its bytes, using the
+     * 16 bits frame counter of the header.
+     *
+     * @param _key NwkSKey for data frames, AppKey for join requests
+     */
+    public int computeMic(SessionCrypto _key) throws MalformedPacketException {
+        return computeMic(_key, PhyHeader.fCnt(buffer, offset));
+    }
+
+    /**
+     * @param _fCnt the full 32 bits frame counter, for data frames
+     */
+    public int computeMic(SessionCrypto _key, int _fCnt) throws MalformedPacketException {
+        MType type = getMType();
+        switch (type) {
+            case JOIN_REQUEST:
+                return _key.computeMic(buffer, offset, length - 4);
+            case UNCONF_DATA_UP:
+            case UNCONF_DATA_DOWN:
+            case CONF_DATA_UP:
+            case CONF_DATA_DOWN:
+                return _key.computeDataMic(type.getDirection(), getDevAddr(), _fCnt, buffer, offset, length - 4);
+            default:
+                throw new MalformedPacketException("MIC not computable from the wire for " + type);
+        }
+    }
+
+    public boolean validateMic(SessionCrypto _key) throws MalformedPacketException {
+        return computeMic(_key) == getMic();
+    }
+
+    public boolean validateMic(SessionCrypto _key, int _fCnt) throws MalformedPacketException {
+        return computeMic(_key, _fCnt) == getMic();
+    }
+
+    /**
+     * Decrypts (or encrypts) the FRMPayload in place, in the wrapped buffer.
+     * The MIC must be checked before, as it covers the encrypted bytes.
+     *
+     * @param _key the AppSKey, or the NwkSKey for FPort 0
+     * @param _fCnt the full 32 bits frame counter
+     */
+    public void cipherPayload(SessionCrypto _key, int _fCnt) throws MalformedPacketException {
+        _key.cipherPayload(getMType().getDirection(), getDevAddr(), _fCnt, buffer, getPayloadOffset(), getPayloadLength());
+    }
+
+    public PhyPayload toPhyPayload() throws MalformedPacketException {
+        ByteBuffer bb = buffer.duplicate();
+        bb.limit(offset + length);
+        bb.position(offset);
+        return new PhyPayload(bb.slice());
+    }
+
+}
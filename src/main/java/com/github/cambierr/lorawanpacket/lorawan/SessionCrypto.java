@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-128 context for one session key (NwkSKey, AppSKey or AppKey): the
+ * cipher and the CMAC subkeys are set up once and reused for every frame.
+ * An instance is not thread safe and should be owned by a single thread.
+ *
+ * @author cambierr
+ */
+public class SessionCrypto {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final byte[] key = new byte[BLOCK_SIZE];
+    private final BlockCipher encryptCipher;
+    private Cipher decryptCipher;
+    private final AesCmac cmac;
+    private final byte[] b0 = new byte[BLOCK_SIZE];
+    private final byte[] mac = new byte[BLOCK_SIZE];
+    private final byte[] a = new byte[BLOCK_SIZE];
+    private final byte[] s = new byte[BLOCK_SIZE];
+
+    public SessionCrypto(byte[] _key) {
+        this(_key, AesEngine.getDefault());
+    }
+
+    /**
+     * @param _engine the AES implementation used for encryption and CMAC;
+     * decryption (join-accept building only) always goes through the JCE
+     */
+    public SessionCrypto(byte[] _key, AesEngine _engine) {
+        encryptCipher = _engine.create();
+        try {
+            cmac = new AesCmac(encryptCipher, BLOCK_SIZE);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Could not initialize AES", ex);
+        }
+        setKey(_key);
+    }
+
+    /**
+     * Re-initializes this context for another key.
+     */
+    public final SessionCrypto setKey(byte[] _key) {
+        if (_key == null || _key.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("key must be 16 bytes long");
+        }
+        System.arraycopy(_key, 0, key, 0, BLOCK_SIZE);
+        return init();
+    }
+
+    /**
+     * Re-initializes this context for the key stored at _index of _buffer,
+     * such as an off-heap session record.
+     */
+    public final SessionCrypto setKey(ByteBuffer _buffer, int _index) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            key[i] = _buffer.get(_index + i);
+        }
+        return init();
+    }
+
+    private SessionCrypto init() {
+        // keys the shared encryption cipher as well
+        cmac.init(key);
+        if (decryptCipher != null) {
+            try {
+                decryptCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
+            } catch (InvalidKeyException ex) {
+                throw new RuntimeException("Could not initialize AES", ex);
+            }
+        }
+        return this;
+    }
+
+    public byte[] getKey() {
+        return key.clone();
+    }
+
+    /**
+     * @return the CMAC of this key, ready for a new message
+     */
+    public AesCmac getCmac() {
+        cmac.reset();
+        return cmac;
+    }
+
+    /**
+     * Fills _b0 with the B0 block prepended to a data frame of _length bytes
+     * (MHDR up to the end of the FRMPayload) when computing its MIC.
+     */
+    public static void fillB0(byte[] _b0, Direction _dir, int _devAddr, int _fCnt, int _length) {
+        _b0[0] = 0x49;
+        _b0[1] = 0x00;
+        _b0[2] = 0x00;
+        _b0[3] = 0x00;
+        _b0[4] = 0x00;
+        _b0[5] = _dir.value();
+        _b0[6] = (byte) _devAddr;
+        _b0[7] = (byte) (_devAddr >> 8);
+        _b0[8] = (byte) (_devAddr >> 16);
+        _b0[9] = (byte) (_devAddr >> 24);
+        _b0[10] = (byte) _fCnt;
+        _b0[11] = (byte) (_fCnt >> 8);
+        _b0[12] = (byte) (_fCnt >> 16);
+        _b0[13] = (byte) (_fCnt >> 24);
+        _b0[14] = 0x00;
+        _b0[15] = (byte) _length;
+    }
+
+    /**
+     * MIC of a data frame, streamed from the wire bytes: _msg holds MHDR up to
+     * the end of the FRMPayload between _offset and _offset + _length.
+     *
+     * @param _devAddr the DevAddr as read from the wire (little-endian)
+     * @param _fCnt the full 32 bits frame counter
+     * @return the first 4 bytes of the CMAC, read as a little-endian int
+     */
+    public int computeDataMic(Direction _dir, int _devAddr, int _fCnt, ByteBuffer _msg, int _offset, int _length) {
+        fillB0(b0, _dir, _devAddr, _fCnt, _length);
+        return computeMic(b0, _msg, _offset, _length);
+    }
+
+    /**
+     * MIC of a data frame whose B0 block was already built with
+     * {@link #fillB0}; _b0 is only read.
+     */
+    public int computeMic(byte[] _b0, ByteBuffer _msg, int _offset, int _length) {
+        cmac.reset();
+        cmac.update(_b0, 0, BLOCK_SIZE);
+        return finishMic(_msg, _offset, _length);
+    }
+
+    /**
+     * Plain MIC (join messages): the first 4 bytes of the CMAC of _msg,
+     * read as a little-endian int. The position of _msg is not modified.
+     */
+    public int computeMic(ByteBuffer _msg, int _offset, int _length) {
+        // a message interrupted by an exception must not leak into this one
+        cmac.reset();
+        return finishMic(_msg, _offset, _length);
+    }
+
+    private int finishMic(ByteBuffer _msg, int _offset, int _length) {
+        cmac.update(_msg, _offset, _length);
+        cmac.doFinal(mac, 0);
+        return (mac[0] & 0xff) | (mac[1] & 0xff) << 8 | (mac[2] & 0xff) << 16 | (mac[3] & 0xff) << 24;
+    }
+
+    /**
+     * Encrypts or decrypts (the operation is symmetric) an FRMPayload in
+     * place. This context must hold the AppSKey, or the NwkSKey for FPort 0.
+     * The position of _data is not modified.
+     *
+     * @param _devAddr the DevAddr as read from the wire (little-endian)
+     * @param _fCnt the full 32 bits frame counter
+     */
+    public void cipherPayload(Direction _dir, int _devAddr, int _fCnt, ByteBuffer _data, int _offset, int _length) {
+        for (int done = 0, i = 1; done < _length; i++) {
+            keyStream(_dir, _devAddr, _fCnt, i);
+            int n = Math.min(BLOCK_SIZE, _length - done);
+            for (int j = 0; j < n; j++) {
+                int index = _offset + done + j;
+                _data.put(index, (byte) (_data.get(index) ^ s[j]));
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Array variant of {@link #cipherPayload(Direction, int, int, ByteBuffer, int, int)};
+     * _in and _out may be the same array.
+     */
+    public void cipherPayload(Direction _dir, int _devAddr, int _fCnt, byte[] _in, int _inOffset, byte[] _out, int _outOffset, int _length) {
+        cipherPayload(_dir, _devAddr, _fCnt, 1, _in, _inOffset, _out, _outOffset, _length);
+    }
+
+    /**
+     * Ciphers part of an FRMPayload, starting at its keystream block _block
+     * (the first block being 1).
+     */
+    void cipherPayload(Direction _dir, int _devAddr, int _fCnt, int _block, byte[] _in, int _inOffset, byte[] _out, int _outOffset, int _length) {
+        for (int done = 0, i = _block; done < _length; i++) {
+            keyStream(_dir, _devAddr, _fCnt, i);
+            int n = Math.min(BLOCK_SIZE, _length - done);
+            for (int j = 0; j < n; j++) {
+                _out[_outOffset + done + j] = (byte) (_in[_inOffset + done + j] ^ s[j]);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Fills s with the keystream block S_i = aes(A_i).
+     */
+    private void keyStream(Direction _dir, int _devAddr, int _fCnt, int _i) {
+        fillA(a, 0, _dir, _devAddr, _fCnt, _i);
+        encryptCipher.encryptBlock(a, 0, s, 0);
+    }
+
+    /**
+     * Writes the A_i block of the FRMPayload encryption at _offset in _dst.
+     */
+    static void fillA(byte[] _dst, int _offset, Direction _dir, int _devAddr, int _fCnt, int _i) {
+        _dst[_offset] = 0x01;
+        _dst[_offset + 1] = 0x00;
+        _dst[_offset + 2] = 0x00;
+        _dst[_offset + 3] = 0x00;
+        _dst[_offset + 4] = 0x00;
+        _dst[_offset + 5] = _dir.value();
+        _dst[_offset + 6] = (byte) _devAddr;
+        _dst[_offset + 7] = (byte) (_devAddr >> 8);
+        _dst[_offset + 8] = (byte) (_devAddr >> 16);
+        _dst[_offset + 9] = (byte) (_devAddr >> 24);
+        _dst[_offset + 10] = (byte) _fCnt;
+        _dst[_offset + 11] = (byte) (_fCnt >> 8);
+        _dst[_offset + 12] = (byte) (_fCnt >> 16);
+        _dst[_offset + 13] = (byte) (_fCnt >> 24);
+        _dst[_offset + 14] = 0x00;
+        _dst[_offset + 15] = (byte) _i;
+    }
+
+    /**
+     * AES-ECB encrypts _length bytes, which must be a multiple of 16.
+     */
+    public void encrypt(byte[] _in, int _inOffset, int _length, byte[] _out, int _outOffset) {
+        encryptCipher.encrypt(_in, _inOffset, _length, _out, _outOffset);
+    }
+
+    /**
+     * AES-ECB decrypts _length bytes, which must be a multiple of 16.
+     */
+    public void decrypt(byte[] _in, int _inOffset, int _length, byte[] _out, int _outOffset) {
+        if (decryptCipher == null) {
+            try {
+                decryptCipher = Cipher.getInstance("AES/ECB/NoPadding");
+                decryptCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException ex) {
+                throw new RuntimeException("Could not initialize AES", ex);
+            }
+        }
+        if (_length % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("length must be a multiple of 16");
+        }
+        try {
+            decryptCipher.update(_in, _inOffset, _length, _out, _outOffset);
+        } catch (ShortBufferException ex) {
+            throw new IllegalArgumentException("output too short", ex);
+        }
+    }
+
+}
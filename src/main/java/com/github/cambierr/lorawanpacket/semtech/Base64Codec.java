@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base64 (RFC 4648, padded) working directly on ByteBuffer regions.
+ *
+ * @author cambierr
+ */
+final class Base64Codec {
+
+    private static final byte[] ALPHABET = {
+        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+        'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+        'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+        'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
+    };
+    private static final byte[] DECODE = new byte[256];
+
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    static int encodedLength(int _length) {
+        return (_length + 2) / 3 * 4;
+    }
+
+    /**
+     * Encodes _length bytes read at _src into characters written at _dst of
+     * the same buffer. The regions may overlap as long as _src is at least at
+     * _dst + encodedLength(_length) - _length: each group of 3 bytes is read
+     * before its 4 characters are written, and writes never catch up with
+     * unread input. This lets callers serialize a payload at the tail of its
+     * own base64 slot and encode it without any scratch buffer.
+     */
+    static void encode(ByteBuffer _bb, int _dst, int _src, int _length) {
+        int out = _dst;
+        int i = 0;
+        for (; i + 3 <= _length; i += 3) {
+            int bits = (_bb.get(_src + i) & 0xff) << 16 | (_bb.get(_src + i + 1) & 0xff) << 8 | (_bb.get(_src + i + 2) & 0xff);
+            _bb.put(out++, ALPHABET[bits >>> 18]);
+            _bb.put(out++, ALPHABET[bits >>> 12 & 0x3f]);
+            _bb.put(out++, ALPHABET[bits >>> 6 & 0x3f]);
+            _bb.put(out++, ALPHABET[bits & 0x3f]);
+        }
+        if (_length - i == 1) {
+            int bits = (_bb.get(_src + i) & 0xff) << 16;
+            _bb.put(out++, ALPHABET[bits >>> 18]);
+            _bb.put(out++, ALPHABET[bits >>> 12 & 0x3f]);
+            _bb.put(out++, (byte) '=');
+            _bb.put(out, (byte) '=');
+        } else if (_length - i == 2) {
+            int bits = (_bb.get(_src + i) & 0xff) << 16 | (_bb.get(_src + i + 1) & 0xff) << 8;
+            _bb.put(out++, ALPHABET[bits >>> 18]);
+            _bb.put(out++, ALPHABET[bits >>> 12 & 0x3f]);
+            _bb.put(out++, ALPHABET[bits >>> 6 & 0x3f]);
+            _bb.put(out, (byte) '=');
+        }
+    }
+
+    /**
+     * Number of bytes encoded in the characters [_from, _to).
+     */
+    static int decodedLength(ByteBuffer _src, int _from, int _to) {
+        int n = 0;
+        for (int i = _from; i < _to; i++) {
+            byte b = _src.get(i);
+            if (b == '=') {
+                break;
+            }
+            n++;
+        }
+        return n / 4 * 3 + (n % 4 == 0 ? 0 : n % 4 - 1);
+    }
+
+    static byte[] decode(ByteBuffer _src, int _from, int _to) throws MalformedPacketException {
+        byte[] out = new byte[decodedLength(_src, _from, _to)];
+        decode(_src, _from, _to, out, 0);
+        return out;
+    }
+
+    static int decode(ByteBuffer _src, int _from, int _to, byte[] _dst, int _offset) throws MalformedPacketException {
+        int bits = 0;
+        int n = 0;
+        int out = _offset;
+        for (int i = _from; i < _to; i++) {
+            int b = _src.get(i) & 0xff;
+            if (b == '=') {
+                break;
+            }
+            int v = DECODE[b];
+            if (v < 0) {
+                throw new MalformedPacketException("malformed data");
+            }
+            bits = bits << 6 | v;
+            if (++n == 4) {
+                _dst[out++] = (byte) (bits >> 16);
+                _dst[out++] = (byte) (bits >> 8);
+                _dst[out++] = (byte) bits;
+                bits = 0;
+                n = 0;
+            }
+        }
+        switch (n) {
+            case 1:
+                throw new MalformedPacketException("malformed data");
+            case 2:
+                _dst[out++] = (byte) (bits >> 4);
+                break;
+            case 3:
+                _dst[out++] = (byte) (bits >> 10);
+                _dst[out++] = (byte) (bits >> 2);
+                break;
+        }
+        return out - _offset;
+    }
+
+}
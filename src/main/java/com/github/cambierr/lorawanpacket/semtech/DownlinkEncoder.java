@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.DataFrameEncoder;
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a complete PULL_RESP datagram for a data downlink into a reusable
+ * direct buffer, in one pass: GWMP header, txpk JSON, and the PHYPayload
+ * produced by a {@link DataFrameEncoder} right into its base64 slot, where
+ * it is encrypted, MIC'd and encoded in place.
+ *
+ * The frame and the TX parameters are configured through
+ * {@link #getFrame()} and {@link #getTxpk()}; both keep their values between
+ * downlinks. Not thread safe: use one encoder per thread.
+ *
+ * @author cambierr
+ */
+public class DownlinkEncoder {
+
+    private final ByteBuffer buffer;
+    private final DataFrameEncoder frame = new DataFrameEncoder();
+    private final Txpk.Builder txpk = new Txpk.Builder();
+    private final JsonWriter json;
+    private final JsonWriter.RawWriter frameWriter = frame::encode;
+    private short token;
+
+    /**
+     * @param _capacity size of the datagram buffer; 1024 bytes cover any
+     * LoRaWAN downlink
+     */
+    public DownlinkEncoder(int _capacity) {
+        buffer = ByteBuffer.allocateDirect(_capacity);
+        json = new JsonWriter(buffer);
+    }
+
+    public DataFrameEncoder getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the TX parameters; data and size are ignored, they come from
+     * the frame
+     */
+    public Txpk.Builder getTxpk() {
+        return txpk;
+    }
+
+    /**
+     * @param _token the GWMP token, echoed in the TX_ACK of the gateway
+     */
+    public DownlinkEncoder setToken(short _token) {
+        token = _token;
+        return this;
+    }
+
+    /**
+     * Encodes the datagram.
+     *
+     * @return the internal buffer, flipped: valid until the next call
+     * @throws java.nio.BufferOverflowException if the capacity is too small
+     */
+    public ByteBuffer encode() throws MalformedPacketException {
+        Txpk tx = txpk.build();
+        if (tx.getModu() == null) {
+            throw new RuntimeException("undefined modu");
+        }
+        buffer.clear();
+        buffer.put((byte) 0x02);
+        buffer.putShort(token);
+        buffer.put(PacketType.PULL_RESP.getValue());
+        json.reset().beginObject();
+        json.name("txpk");
+        tx.writeJson(json, frame.length(), frameWriter);
+        json.endObject();
+        buffer.flip();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull tokenizer reading GWMP JSON straight from a ByteBuffer. Field names of
+ * up to 8 ASCII characters are packed into a long (see {@link #key(String)})
+ * so they can be compared against precomputed constants without building a
+ * String, and numbers are accumulated digit by digit.
+ *
+ * @author cambierr
+ */
+final class JsonReader {
+
+    static final long UNKNOWN_KEY = -1;
+
+    private static final int MAX_DEPTH = 32;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int pos;
+    private long key;
+
+    private boolean negative;
+    private long mantissa;
+    private int exponent;
+    private boolean overflow;
+    private int numberStart;
+    private boolean escaped;
+    private int regionStart;
+    private int regionEnd;
+
+    JsonReader(ByteBuffer _raw) {
+        buffer = _raw;
+        pos = _raw.position();
+        limit = _raw.limit();
+    }
+
+    static long key(String _name) {
+        if (_name.length() > 8) {
+            return UNKNOWN_KEY;
+        }
+        long k = 0;
+        for (int i = 0; i < _name.length(); i++) {
+            k = k << 8 | (_name.charAt(i) & 0xff);
+        }
+        return k;
+    }
+
+    long key() {
+        return key;
+    }
+
+    int peek() throws MalformedPacketException {
+        skipWhitespace();
+        if (pos >= limit) {
+            throw malformed();
+        }
+        return buffer.get(pos);
+    }
+
+    void beginObject() throws MalformedPacketException {
+        expect('{');
+    }
+
+    void beginArray() throws MalformedPacketException {
+        expect('[');
+    }
+
+    /**
+     * Moves to the next field of the current object and reads its name, or
+     * consumes the closing brace and returns false.
+     */
+    boolean nextField() throws MalformedPacketException {
+        int c = peek();
+        if (c == ',') {
+            pos++;
+            c = peek();
+        }
+        if (c == '}') {
+            pos++;
+            return false;
+        }
+        key = readKey();
+        expect(':');
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the current array, or consumes the closing
+     * bracket and returns false.
+     */
+    boolean nextElement() throws MalformedPacketException {
+        int c = peek();
+        if (c == ',') {
+            pos++;
+            c = peek();
+        }
+        if (c == ']') {
+            pos++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a string value of up to 8 ASCII characters packed like a field
+     * name, {@link #UNKNOWN_KEY} if it is longer.
+     */
+    long readKey() throws MalformedPacketException {
+        int start = scanString();
+        int end = pos - 1;
+        if (escaped || end - start > 8) {
+            return UNKNOWN_KEY;
+        }
+        long k = 0;
+        for (int i = start; i < end; i++) {
+            k = k << 8 | (buffer.get(i) & 0xff);
+        }
+        return k;
+    }
+
+    String readString() throws MalformedPacketException {
+        int start = scanString();
+        int end = pos - 1;
+        if (!escaped) {
+            return decode(start, end);
+        }
+        return unescape(start, end);
+    }
+
+    /**
+     * Reads a string value without decoding it: its characters are
+     * [regionStart(), regionEnd()) of the returned buffer, which is the
+     * parsed one unless the string had to be unescaped.
+     */
+    ByteBuffer readRaw() throws MalformedPacketException {
+        int start = scanString();
+        int end = pos - 1;
+        if (!escaped) {
+            regionStart = start;
+            regionEnd = end;
+            return buffer;
+        }
+        ByteBuffer unescaped = ByteBuffer.wrap(unescape(start, end).getBytes(StandardCharsets.ISO_8859_1));
+        regionStart = 0;
+        regionEnd = unescaped.limit();
+        return unescaped;
+    }
+
+    int regionStart() {
+        return regionStart;
+    }
+
+    int regionEnd() {
+        return regionEnd;
+    }
+
+    /**
+     * Decodes the UTF-8 runs between escapes, so that only the escape
+     * sequences themselves are handled byte by byte.
+     */
+    private String unescape(int _from, int _to) throws MalformedPacketException {
+        StringBuilder sb = new StringBuilder(_to - _from);
+        int run = _from;
+        for (int i = _from; i < _to; i++) {
+            if (buffer.get(i) != '\\') {
+                continue;
+            }
+            sb.append(decode(run, i));
+            char c = (char) buffer.get(++i);
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= _to) {
+                        throw malformed();
+                    }
+                    int u = 0;
+                    for (int j = 1; j <= 4; j++) {
+                        int d = Character.digit(buffer.get(i + j), 16);
+                        if (d < 0) {
+                            throw malformed();
+                        }
+                        u = u << 4 | d;
+                    }
+                    sb.append((char) u);
+                    i += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+            run = i + 1;
+        }
+        sb.append(decode(run, _to));
+        return sb.toString();
+    }
+
+    boolean readBoolean() throws MalformedPacketException {
+        int c = peek();
+        if (c == 't' && matches("true")) {
+            return true;
+        }
+        if (c == 'f' && matches("false")) {
+            return false;
+        }
+        throw malformed();
+    }
+
+    int readInt() throws MalformedPacketException {
+        return (int) readLong();
+    }
+
+    long readLong() throws MalformedPacketException {
+        scanNumber();
+        if (exponent == 0 && !overflow) {
+            return negative ? -mantissa : mantissa;
+        }
+        return (long) toDouble();
+    }
+
+    double readDouble() throws MalformedPacketException {
+        scanNumber();
+        return toDouble();
+    }
+
+    void skipValue() throws MalformedPacketException {
+        skipValue(0);
+    }
+
+    /**
+     * Leaves the underlying buffer positioned after the last consumed token.
+     */
+    void finish() {
+        buffer.position(pos);
+    }
+
+    private void skipValue(int _depth) throws MalformedPacketException {
+        if (_depth > MAX_DEPTH) {
+            throw malformed();
+        }
+        switch (peek()) {
+            case '"':
+                scanString();
+                break;
+            case '{':
+                pos++;
+                while (nextField()) {
+                    skipValue(_depth + 1);
+                }
+                break;
+            case '[':
+                pos++;
+                while (nextElement()) {
+                    skipValue(_depth + 1);
+                }
+                break;
+            case 't':
+            case 'f':
+                readBoolean();
+                break;
+            case 'n':
+                if (!matches("null")) {
+                    throw malformed();
+                }
+                break;
+            default:
+                scanNumber();
+        }
+    }
+
+    private int scanString() throws MalformedPacketException {
+        expect('"');
+        int start = pos;
+        escaped = false;
+        while (true) {
+            if (pos >= limit) {
+                throw malformed();
+            }
+            byte b = buffer.get(pos++);
+            if (b == '"') {
+                return start;
+            }
+            if (b == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+    }
+
+    private void scanNumber() throws MalformedPacketException {
+        skipWhitespace();
+        numberStart = pos;
+        negative = false;
+        mantissa = 0;
+        exponent = 0;
+        overflow = false;
+        if (pos < limit && buffer.get(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        if (scanDigits(false) == 0) {
+            throw malformed();
+        }
+        if (pos < limit && buffer.get(pos) == '.') {
+            pos++;
+            if (scanDigits(true) == 0) {
+                throw malformed();
+            }
+        }
+        if (pos < limit && (buffer.get(pos) | 0x20) == 'e') {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < limit && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+                negativeExponent = buffer.get(pos) == '-';
+                pos++;
+            }
+            int e = 0;
+            int n = 0;
+            while (pos < limit) {
+                int d = buffer.get(pos) - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                if (e < 10000) {
+                    e = e * 10 + d;
+                }
+                pos++;
+                n++;
+            }
+            if (n == 0) {
+                throw malformed();
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+    }
+
+    private int scanDigits(boolean _fraction) {
+        int n = 0;
+        while (pos < limit) {
+            int d = buffer.get(pos) - '0';
+            if (d < 0 || d > 9) {
+                break;
+            }
+            if (mantissa < 100_000_000_000_000_000L) {
+                mantissa = mantissa * 10 + d;
+                if (_fraction) {
+                    exponent--;
+                }
+            } else {
+                overflow = true;
+                if (!_fraction) {
+                    exponent++;
+                }
+            }
+            pos++;
+            n++;
+        }
+        return n;
+    }
+
+    private double toDouble() throws MalformedPacketException {
+        if (!overflow && mantissa < 1L << 53 && exponent >= -22 && exponent <= 22) {
+            double v = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            return negative ? -v : v;
+        }
+        try {
+            return Double.parseDouble(decode(numberStart, pos));
+        } catch (NumberFormatException ex) {
+            throw malformed();
+        }
+    }
+
+    private boolean matches(String _literal) {
+        if (pos + _literal.length() > limit) {
+            return false;
+        }
+        for (int i = 0; i < _literal.length(); i++) {
+            if (buffer.get(pos + i) != _literal.charAt(i)) {
+                return false;
+            }
+        }
+        pos += _literal.length();
+        return true;
+    }
+
+    private void expect(char _c) throws MalformedPacketException {
+        if (peek() != _c) {
+            throw malformed();
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private String decode(int _from, int _to) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + _from, _to - _from, StandardCharsets.UTF_8);
+        }
+        byte[] tmp = new byte[_to - _from];
+        for (int i = 0; i < tmp.length; i++) {
+            tmp[i] = buffer.get(_from + i);
+        }
+        return new String(tmp, StandardCharsets.UTF_8);
+    }
+
+    private static MalformedPacketException malformed() {
+        return new MalformedPacketException("malformed json");
+    }
+
+}
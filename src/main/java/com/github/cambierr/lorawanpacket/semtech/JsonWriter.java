@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayload;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes GWMP JSON directly into a ByteBuffer. A writer created by
+ * {@link #counting()} has no buffer and only counts the bytes it would
+ * write, so the exact size of a packet is computed by running the same
+ * serialization code twice.
+ *
+ * @author cambierr
+ */
+final class JsonWriter {
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private final ByteBuffer buffer;
+    private int count;
+    private int depth;
+    private long nonEmpty;
+    private boolean afterName;
+
+    JsonWriter(ByteBuffer _bb) {
+        buffer = _bb;
+    }
+
+    static JsonWriter counting() {
+        return new JsonWriter(null);
+    }
+
+    /**
+     * Forgets the current document, to write another one into the buffer.
+     */
+    JsonWriter reset() {
+        count = 0;
+        depth = 0;
+        nonEmpty = 0;
+        afterName = false;
+        return this;
+    }
+
+    int count() {
+        return count;
+    }
+
+    JsonWriter beginObject() {
+        separate();
+        put('{');
+        depth++;
+        nonEmpty &= ~(1L << depth);
+        return this;
+    }
+
+    JsonWriter endObject() {
+        depth--;
+        put('}');
+        return this;
+    }
+
+    JsonWriter beginArray() {
+        separate();
+        put('[');
+        depth++;
+        nonEmpty &= ~(1L << depth);
+        return this;
+    }
+
+    JsonWriter endArray() {
+        depth--;
+        put(']');
+        return this;
+    }
+
+    JsonWriter name(String _name) {
+        separate();
+        put('"');
+        for (int i = 0; i < _name.length(); i++) {
+            put(_name.charAt(i));
+        }
+        put('"');
+        put(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(boolean _value) {
+        separate();
+        if (_value) {
+            put('t');
+            put('r');
+            put('u');
+            put('e');
+        } else {
+            put('f');
+            put('a');
+            put('l');
+            put('s');
+            put('e');
+        }
+        return this;
+    }
+
+    JsonWriter value(long _value) {
+        separate();
+        writeLong(_value);
+        return this;
+    }
+
+    /**
+     * Writes _value rounded to _decimals fractional digits, without trailing
+     * zeros.
+     */
+    JsonWriter value(double _value, int _decimals) {
+        separate();
+        double abs = Math.abs(_value);
+        long scaled = Math.round(abs * POW10[_decimals]);
+        if (scaled < 0 || scaled == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("value out of range");
+        }
+        if (_value < 0 && scaled != 0) {
+            put('-');
+        }
+        writeLong(scaled / POW10[_decimals]);
+        long fraction = scaled % POW10[_decimals];
+        if (fraction != 0) {
+            int digits = _decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            put('.');
+            for (int i = digits - 1; i >= 0; i--) {
+                put((char) ('0' + fraction / POW10[i] % 10));
+            }
+        }
+        return this;
+    }
+
+    JsonWriter value(String _value) {
+        separate();
+        put('"');
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            if (c == '"' || c == '\\') {
+                put('\\');
+                put(c);
+            } else if (c < 0x20) {
+                put('\\');
+                put('u');
+                put('0');
+                put('0');
+                put(Character.forDigit(c >> 4, 16));
+                put(Character.forDigit(c & 0xf, 16));
+            } else if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put((char) (0xc0 | c >> 6));
+                put((char) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < _value.length()) {
+                int cp = Character.toCodePoint(c, _value.charAt(++i));
+                put((char) (0xf0 | cp >> 18));
+                put((char) (0x80 | cp >> 12 & 0x3f));
+                put((char) (0x80 | cp >> 6 & 0x3f));
+                put((char) (0x80 | cp & 0x3f));
+            } else {
+                put((char) (0xe0 | c >> 12));
+                put((char) (0x80 | c >> 6 & 0x3f));
+                put((char) (0x80 | c & 0x3f));
+            }
+        }
+        put('"');
+        return this;
+    }
+
+    /**
+     * Writes the base64 encoding of _phy as a string.
+     */
+    JsonWriter value(PhyPayload _phy) throws MalformedPacketException {
+        return value(_phy.length(), _phy::toRaw);
+    }
+
+    /**
+     * Writes the base64 encoding of _length raw bytes as a string: _raw
+     * writes them at the tail of their base64 slot and they are encoded in
+     * place.
+     */
+    JsonWriter value(int _length, RawWriter _raw) throws MalformedPacketException {
+        separate();
+        int encoded = Base64Codec.encodedLength(_length);
+        put('"');
+        if (buffer == null) {
+            count += encoded;
+        } else {
+            int start = buffer.position();
+            if (buffer.remaining() < encoded) {
+                throw new BufferOverflowException();
+            }
+            ByteBuffer tail = buffer.duplicate();
+            tail.position(start + encoded - _length);
+            _raw.write(tail);
+            Base64Codec.encode(buffer, start, start + encoded - _length, _length);
+            buffer.position(start + encoded);
+            count += encoded;
+        }
+        put('"');
+        return this;
+    }
+
+    private void writeLong(long _value) {
+        if (_value == Long.MIN_VALUE) {
+            String s = Long.toString(_value);
+            for (int i = 0; i < s.length(); i++) {
+                put(s.charAt(i));
+            }
+            return;
+        }
+        if (_value < 0) {
+            put('-');
+            _value = -_value;
+        }
+        int digits = 1;
+        for (long v = _value; v >= 10; v /= 10) {
+            digits++;
+        }
+        if (buffer == null) {
+            count += digits;
+            return;
+        }
+        if (buffer.remaining() < digits) {
+            throw new BufferOverflowException();
+        }
+        int start = buffer.position();
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put(start + i, (byte) ('0' + _value % 10));
+            _value /= 10;
+        }
+        buffer.position(start + digits);
+        count += digits;
+    }
+
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        long bit = 1L << depth;
+        if ((nonEmpty & bit) != 0) {
+            put(',');
+        }
+        nonEmpty |= bit;
+    }
+
+    private void put(char _c) {
+        if (buffer != null) {
+            buffer.put((byte) _c);
+        }
+        count++;
+    }
+
+    /**
+     * Producer of the raw bytes of a base64 value.
+     */
+    interface RawWriter {
+
+        void write(ByteBuffer _bb) throws MalformedPacketException;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PayloadRegistry;
+
+/**
+ * Maps each packet identifier byte to the factory decoding its packet, and
+ * carries the {@link PayloadRegistry} used for the PHYPayloads embedded in
+ * rxpk/txpk. The shared default registry can not be modified.
+ *
+ * @author cambierr
+ */
+public class PacketRegistry {
+
+    private static final PacketRegistry DEFAULT = new PacketRegistry(PayloadRegistry.getDefault(), true);
+
+    private final SemtechPacketFactory[] factories = new SemtechPacketFactory[256];
+    private final PayloadRegistry payloads;
+    private final boolean locked;
+    private RxpkFilter rxpkFilter;
+    private boolean lazyRxpk;
+
+    public PacketRegistry(PayloadRegistry _payloads) {
+        this(_payloads, false);
+    }
+
+    private PacketRegistry(PayloadRegistry _payloads, boolean _locked) {
+        payloads = _payloads;
+        factories[PacketType.PUSH_DATA.getValue()] = (r, raw) -> new PushData(r, raw, this);
+        factories[PacketType.PUSH_ACK.getValue()] = PushAck::new;
+        factories[PacketType.PULL_DATA.getValue()] = PullData::new;
+        factories[PacketType.PULL_ACK.getValue()] = PullAck::new;
+        factories[PacketType.PULL_RESP.getValue()] = (r, raw) -> new PullResp(r, raw, this);
+        factories[PacketType.TX_ACK.getValue()] = TxAck::new;
+        locked = _locked;
+    }
+
+    public static PacketRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public SemtechPacketFactory get(byte _identifier) throws MalformedPacketException {
+        SemtechPacketFactory factory = factories[_identifier & 0xff];
+        if (factory == null) {
+            throw new MalformedPacketException("PacketType");
+        }
+        return factory;
+    }
+
+    public PacketRegistry set(PacketType _type, SemtechPacketFactory _factory) {
+        checkUnlocked();
+        factories[_type.getValue() & 0xff] = _factory;
+        return this;
+    }
+
+    public PayloadRegistry getPayloadRegistry() {
+        return payloads;
+    }
+
+    public RxpkFilter getRxpkFilter() {
+        return rxpkFilter;
+    }
+
+    /**
+     * Rxpk entries of a PUSH_DATA rejected by _filter are dropped before
+     * their data is decoded.
+     */
+    public PacketRegistry setRxpkFilter(RxpkFilter _filter) {
+        checkUnlocked();
+        rxpkFilter = _filter;
+        return this;
+    }
+
+    public boolean isLazyRxpk() {
+        return lazyRxpk;
+    }
+
+    /**
+     * When enabled, rxpk entries keep a reference to the base64 data in the
+     * received datagram and only decode it when accessed. The datagram buffer
+     * must then not be reused while those Rxpk are still in use.
+     */
+    public PacketRegistry setLazyRxpk(boolean _lazy) {
+        checkUnlocked();
+        lazyRxpk = _lazy;
+        return this;
+    }
+
+    private void checkUnlocked() {
+        if (locked) {
+            throw new RuntimeException("The default registry can not be modified");
+        }
+    }
+
+}
@@ -31,32 +31,33 @@ import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
  */
 public enum PacketType {
 
-    PUSH_DATA((byte) 0x00, PushData.class),
-    PUSH_ACK((byte) 0x01, PushAck.class),
-    PULL_DATA((byte) 0x02, PullData.class),
-    PULL_ACK((byte) 0x04, PullAck.class),
-    PULL_RESP((byte) 0x03, PullResp.class),
-    TX_ACK((byte) 0x05, TxAck.class);
+    PUSH_DATA((byte) 0x00),
+    PUSH_ACK((byte) 0x01),
+    PULL_DATA((byte) 0x02),
+    PULL_ACK((byte) 0x04),
+    PULL_RESP((byte) 0x03),
+    TX_ACK((byte) 0x05);
 
-    private PacketType(byte _value, Class<? extends SemtechPacket> _mapper) {
+    private static final PacketType[] BY_VALUE = new PacketType[256];
+
+    static {
+        for (PacketType v : values()) {
+            BY_VALUE[v.value & 0xff] = v;
+        }
+    }
+
+    private PacketType(byte _value) {
         value = _value;
-        mapper = _mapper;
     }
 
     private final byte value;
-    private final Class<? extends SemtechPacket> mapper;
 
     public static PacketType from(byte _identifier) throws MalformedPacketException {
-        for (PacketType v : values()) {
-            if (v.value == _identifier) {
-                return v;
-            }
+        PacketType v = BY_VALUE[_identifier & 0xff];
+        if (v == null) {
+            throw new MalformedPacketException("PacketType");
         }
-        throw new MalformedPacketException("PacketType");
-    }
-
-    public Class<? extends SemtechPacket> getMapper() {
-        return mapper;
+        return v;
     }
 
     public byte getValue() {
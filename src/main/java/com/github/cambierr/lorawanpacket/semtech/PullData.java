@@ -23,6 +23,7 @@
  */
 package com.github.cambierr.lorawanpacket.semtech;
 
+import com.github.cambierr.lorawanpacket.lorawan.Identifiers;
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
 import java.nio.ByteBuffer;
 
@@ -62,6 +63,11 @@ public class PullData extends SemtechPacket {
             return this;
         }
 
+        public Builder setGatewayEui(long _gatewayEui) {
+            instance.gatewayEui = Identifiers.gatewayEui(_gatewayEui);
+            return this;
+        }
+
         public PullData build() {
             return instance;
         }
@@ -72,6 +78,18 @@ public class PullData extends SemtechPacket {
         return gatewayEui;
     }
 
+    /**
+     * @return the gateway EUI, read big-endian
+     */
+    public long getGatewayEuiLong() {
+        return Identifiers.gatewayEui(gatewayEui);
+    }
+
+    @Override
+    public int length() throws MalformedPacketException {
+        return super.length() + gatewayEui.length;
+    }
+
     @Override
     public void toRaw(ByteBuffer _bb) throws MalformedPacketException {
         super.toRaw(_bb);
@@ -42,6 +42,10 @@ public class PullResp extends SemtechPacket {
     private List<Txpk> txpks;
 
     public PullResp(byte[] _randoms, ByteBuffer _raw) throws MalformedPacketException {
+        this(_randoms, _raw, PacketRegistry.getDefault());
+    }
+
+    public PullResp(byte[] _randoms, ByteBuffer _raw, PacketRegistry _registry) throws MalformedPacketException {
         super(_randoms, PacketType.PULL_RESP);
         _raw.order(ByteOrder.LITTLE_ENDIAN);
 
@@ -65,13 +69,16 @@ public class PullResp extends SemtechPacket {
             throw new MalformedPacketException("missing json (txpk)");
         }
 
-        if (!jo.get("txpk").getClass().equals(JSONArray.class)) {
-            throw new MalformedPacketException("malformed json (txpk)");
-        }
-        JSONArray rxpk = jo.getJSONArray("txpk");
+        if (jo.get("txpk").getClass().equals(JSONObject.class)) {
+            txpks.add(new Txpk(jo.getJSONObject("txpk"), _registry.getPayloadRegistry()));
+        } else if (jo.get("txpk").getClass().equals(JSONArray.class)) {
+            JSONArray rxpk = jo.getJSONArray("txpk");
 
-        for (int i = 0; i < rxpk.length(); i++) {
-            txpks.add(new Txpk(rxpk.getJSONObject(i)));
+            for (int i = 0; i < rxpk.length(); i++) {
+                txpks.add(new Txpk(rxpk.getJSONObject(i), _registry.getPayloadRegistry()));
+            }
+        } else {
+            throw new MalformedPacketException("malformed json (txpk)");
         }
     }
 
@@ -102,20 +109,32 @@ public class PullResp extends SemtechPacket {
 
     }
 
+    @Override
+    public int length() throws MalformedPacketException {
+        JsonWriter json = JsonWriter.counting();
+        writeJson(json);
+        return super.length() + json.count();
+    }
+
     @Override
     public void toRaw(ByteBuffer _bb) throws MalformedPacketException {
         super.toRaw(_bb);
+        writeJson(new JsonWriter(_bb));
+    }
 
-        JSONObject json = new JSONObject();
-        if (!txpks.isEmpty()) {
-            JSONArray txpk = new JSONArray();
-            for (Txpk s : txpks) {
-                txpk.put(s.toJson());
+    private void writeJson(JsonWriter _json) throws MalformedPacketException {
+        _json.beginObject();
+        if (txpks.size() == 1) {
+            _json.name("txpk");
+            txpks.get(0).writeJson(_json);
+        } else if (!txpks.isEmpty()) {
+            _json.name("txpk").beginArray();
+            for (Txpk t : txpks) {
+                t.writeJson(_json);
             }
-            json.put("txpk", txpks);
+            _json.endArray();
         }
-
-        _bb.put(json.toString().getBytes());
+        _json.endObject();
     }
 
 }
@@ -23,15 +23,13 @@
  */
 package com.github.cambierr.lorawanpacket.semtech;
 
+import com.github.cambierr.lorawanpacket.lorawan.Identifiers;
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  *
@@ -39,11 +37,18 @@ import org.json.JSONObject;
  */
 public class PushData extends SemtechPacket {
 
+    private static final long RXPK = JsonReader.key("rxpk");
+    private static final long STAT = JsonReader.key("stat");
+
     private byte[] gatewayEui;
     private List<Stat> stats;
     private List<Rxpk> rxpks;
 
     public PushData(byte[] _randoms, ByteBuffer _raw) throws MalformedPacketException {
+        this(_randoms, _raw, PacketRegistry.getDefault());
+    }
+
+    public PushData(byte[] _randoms, ByteBuffer _raw, PacketRegistry _registry) throws MalformedPacketException {
         super(_randoms, PacketType.PUSH_DATA);
         _raw.order(ByteOrder.LITTLE_ENDIAN);
 
@@ -54,75 +59,96 @@ public class PushData extends SemtechPacket {
         gatewayEui = new byte[8];
         _raw.get(gatewayEui);
 
-        byte[] json = new byte[_raw.remaining()];
-        _raw.get(json);
-        JSONObject jo;
-
-        try {
-            jo = new JSONObject(new String(json));
-        } catch (JSONException ex) {
-            throw new MalformedPacketException("malformed json");
-        }
-
         stats = new ArrayList<>();
         rxpks = new ArrayList<>();
 
-        if (jo.has("rxpk")) {
-            if (!jo.get("rxpk").getClass().equals(JSONArray.class)) {
-                throw new MalformedPacketException("malformed json (rxpk)");
-            }
-            JSONArray rxpk = jo.getJSONArray("rxpk");
-
-            for (int i = 0; i < rxpk.length(); i++) {
-                rxpks.add(new Rxpk(rxpk.getJSONObject(i)));
+        JsonReader json = new JsonReader(_raw);
+        json.beginObject();
+        while (json.nextField()) {
+            if (json.key() == RXPK) {
+                if (json.peek() != '[') {
+                    throw new MalformedPacketException("malformed json (rxpk)");
+                }
+                json.beginArray();
+                while (json.nextElement()) {
+                    Rxpk r = new Rxpk(json, _registry.getPayloadRegistry());
+                    if (_registry.getRxpkFilter() != null && !_registry.getRxpkFilter().accept(r)) {
+                        continue;
+                    }
+                    if (!_registry.isLazyRxpk()) {
+                        r.decodeData();
+                    }
+                    rxpks.add(r);
+                }
+            } else if (json.key() == STAT) {
+                if (json.peek() == '{') {
+                    stats.add(new Stat(json));
+                } else if (json.peek() == '[') {
+                    json.beginArray();
+                    while (json.nextElement()) {
+                        stats.add(new Stat(json));
+                    }
+                } else {
+                    throw new MalformedPacketException("malformed json (stat)");
+                }
+            } else {
+                json.skipValue();
             }
         }
-
-        if (jo.has("stat")) {
-            if (!jo.get("stat").getClass().equals(JSONArray.class)) {
-                throw new MalformedPacketException("malformed json (stat)");
-            }
-            JSONArray stat = jo.getJSONArray("stat");
-
-            for (int i = 0; i < stat.length(); i++) {
-                stats.add(new Stat(stat.getJSONObject(i)));
-            }
-        }
-
+        json.finish();
     }
 
     private PushData(byte[] _randoms) {
         super(_randoms, PacketType.PUSH_DATA);
     }
 
+    @Override
+    public int length() throws MalformedPacketException {
+        JsonWriter json = JsonWriter.counting();
+        writeJson(json);
+        return super.length() + gatewayEui.length + json.count();
+    }
+
     @Override
     public void toRaw(ByteBuffer _bb) throws MalformedPacketException {
         super.toRaw(_bb);
         _bb.put(gatewayEui);
+        writeJson(new JsonWriter(_bb));
+    }
 
-        JSONObject json = new JSONObject();
-        if (!stats.isEmpty()) {
-            JSONArray stat = new JSONArray();
-            for (Stat s : stats) {
-                stat.put(s.toJson());
+    private void writeJson(JsonWriter _json) throws MalformedPacketException {
+        _json.beginObject();
+        if (!rxpks.isEmpty()) {
+            _json.name("rxpk").beginArray();
+            for (Rxpk r : rxpks) {
+                r.writeJson(_json);
             }
-            json.put("stat", stats);
+            _json.endArray();
         }
-        if (!rxpks.isEmpty()) {
-            JSONArray rxpk = new JSONArray();
-            for (Rxpk s : rxpks) {
-                rxpk.put(s.toJson());
+        if (stats.size() == 1) {
+            _json.name("stat");
+            stats.get(0).writeJson(_json);
+        } else if (!stats.isEmpty()) {
+            _json.name("stat").beginArray();
+            for (Stat s : stats) {
+                s.writeJson(_json);
             }
-            json.put("rxpk", rxpks);
+            _json.endArray();
         }
-
-        _bb.put(json.toString().getBytes());
+        _json.endObject();
     }
 
     public byte[] getGatewayEui() {
         return gatewayEui;
     }
 
+    /**
+     * @return the gateway EUI, read big-endian
+     */
+    public long getGatewayEuiLong() {
+        return Identifiers.gatewayEui(gatewayEui);
+    }
+
     public List<Stat> getStats() {
         return Collections.unmodifiableList(stats);
     }
@@ -148,6 +174,11 @@ public class PushData extends SemtechPacket {
             return this;
         }
 
+        public Builder setGatewayEui(long _gatewayEui) {
+            instance.gatewayEui = Identifiers.gatewayEui(_gatewayEui);
+            return this;
+        }
+
         public Builder setStats(List<Stat> _stats) {
             instance.stats = _stats;
             return this;
@@ -24,9 +24,9 @@
 package com.github.cambierr.lorawanpacket.semtech;
 
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PayloadRegistry;
 import com.github.cambierr.lorawanpacket.lorawan.PhyPayload;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.Base64;
 import org.json.JSONObject;
 
@@ -36,6 +36,22 @@ import org.json.JSONObject;
  */
 public class Rxpk {
 
+    private static final long TIME = JsonReader.key("time");
+    private static final long TMST = JsonReader.key("tmst");
+    private static final long FREQ = JsonReader.key("freq");
+    private static final long CHAN = JsonReader.key("chan");
+    private static final long RFCH = JsonReader.key("rfch");
+    private static final long STAT = JsonReader.key("stat");
+    private static final long MODU = JsonReader.key("modu");
+    private static final long DATR = JsonReader.key("datr");
+    private static final long CODR = JsonReader.key("codr");
+    private static final long RSSI = JsonReader.key("rssi");
+    private static final long LSNR = JsonReader.key("lsnr");
+    private static final long SIZE = JsonReader.key("size");
+    private static final long DATA = JsonReader.key("data");
+    private static final long LORA = JsonReader.key("LORA");
+    private static final long FSK = JsonReader.key("FSK");
+
     private String time;
     private int tmst;
     private double freq;
@@ -50,7 +66,17 @@ public class Rxpk {
     private int size;
     private PhyPayload data;
 
+    private ByteBuffer encoded;
+    private int encodedStart;
+    private int encodedEnd;
+    private byte[] raw;
+    private PayloadRegistry registry;
+
     public Rxpk(JSONObject _json) throws MalformedPacketException {
+        this(_json, PayloadRegistry.getDefault());
+    }
+
+    public Rxpk(JSONObject _json, PayloadRegistry _registry) throws MalformedPacketException {
 
         /**
          * tmst
@@ -94,7 +120,7 @@ public class Rxpk {
         if (!_json.has("freq")) {
             throw new MalformedPacketException("missing freq");
         } else {
-            freq = _json.getDouble("stat");
+            freq = _json.getDouble("freq");
         }
 
         /**
@@ -192,8 +218,108 @@ public class Rxpk {
                 throw new MalformedPacketException("malformed data");
             }
 
-            data = new PhyPayload(ByteBuffer.wrap(raw));
+            data = new PhyPayload(ByteBuffer.wrap(raw), _registry);
+        }
+    }
+
+    Rxpk(JsonReader _json, PayloadRegistry _registry) throws MalformedPacketException {
+        this();
+        boolean hasTmst = false;
+
+        _json.beginObject();
+        while (_json.nextField()) {
+            long key = _json.key();
+            if (key == TMST) {
+                tmst = _json.readInt();
+                hasTmst = true;
+            } else if (key == TIME) {
+                time = _json.readString();
+            } else if (key == CHAN) {
+                chan = _json.readInt();
+            } else if (key == RFCH) {
+                rfch = _json.readInt();
+            } else if (key == FREQ) {
+                freq = _json.readDouble();
+            } else if (key == STAT) {
+                stat = _json.readInt();
+            } else if (key == MODU) {
+                long value = _json.readKey();
+                if (value == LORA) {
+                    modu = Modulation.LORA;
+                } else if (value == FSK) {
+                    modu = Modulation.FSK;
+                } else {
+                    throw new MalformedPacketException("malformed modu");
+                }
+            } else if (key == DATR) {
+                if (_json.peek() == '"') {
+                    datr = _json.readString();
+                } else {
+                    datr = _json.readInt();
+                }
+            } else if (key == CODR) {
+                codr = _json.readString();
+            } else if (key == RSSI) {
+                rssi = _json.readInt();
+            } else if (key == LSNR) {
+                lsnr = _json.readDouble();
+            } else if (key == SIZE) {
+                size = _json.readInt();
+            } else if (key == DATA) {
+                encoded = _json.readRaw();
+                encodedStart = _json.regionStart();
+                encodedEnd = _json.regionEnd();
+            } else {
+                _json.skipValue();
+            }
+        }
+
+        if (!hasTmst) {
+            throw new MalformedPacketException("missing tmst");
+        }
+        if (time == null) {
+            throw new MalformedPacketException("missing time");
+        }
+        if (chan == Integer.MAX_VALUE) {
+            throw new MalformedPacketException("missing chan");
+        }
+        if (rfch == Integer.MAX_VALUE) {
+            throw new MalformedPacketException("missing rfch");
+        }
+        if (freq == Double.MAX_VALUE) {
+            throw new MalformedPacketException("missing freq");
+        }
+        if (stat == Integer.MAX_VALUE) {
+            throw new MalformedPacketException("missing stat");
+        }
+        if (stat > 1 || stat < -1) {
+            throw new MalformedPacketException("stat must be equal to -1, 0, or 1");
+        }
+        if (modu == null) {
+            throw new MalformedPacketException("missing modu");
+        }
+        if (datr == null) {
+            throw new MalformedPacketException("missing datr");
+        }
+        if (modu.equals(Modulation.FSK) != datr instanceof Integer) {
+            throw new MalformedPacketException("malformed datr");
+        }
+        if (codr == null && modu.equals(Modulation.LORA)) {
+            throw new MalformedPacketException("missing codr");
+        }
+        if (rssi == Integer.MAX_VALUE) {
+            throw new MalformedPacketException("missing rssi");
+        }
+        if (lsnr == Double.MAX_VALUE && modu.equals(Modulation.LORA)) {
+            throw new MalformedPacketException("missing lsnr");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new MalformedPacketException("missing size");
         }
+        if (encoded == null) {
+            throw new MalformedPacketException("missing data");
+        }
+        registry = _registry;
     }
 
     private Rxpk() {
@@ -260,10 +386,73 @@ public class Rxpk {
         return size;
     }
 
-    public PhyPayload getData() {
+    /**
+     * Raw PHYPayload bytes. For an rxpk read from a PUSH_DATA, the base64 data
+     * is only decoded on the first call.
+     */
+    public byte[] getRawData() throws MalformedPacketException {
+        if (encoded != null) {
+            raw = Base64Codec.decode(encoded, encodedStart, encodedEnd);
+            encoded = null;
+        }
+        if (raw == null && data != null) {
+            ByteBuffer bb = ByteBuffer.allocate(data.length());
+            data.toRaw(bb);
+            return bb.array();
+        }
+        return raw;
+    }
+
+    /**
+     * Copies the raw PHYPayload bytes into _dst. The base64 data of an rxpk
+     * read lazily from a PUSH_DATA is decoded there, without allocating and
+     * without being kept.
+     *
+     * @return the number of bytes written, 0 without data
+     * @throws MalformedPacketException if the data is not valid base64 or
+     * does not fit in _dst
+     */
+    public int getRawData(byte[] _dst, int _offset) throws MalformedPacketException {
+        if (encoded != null) {
+            if (Base64Codec.decodedLength(encoded, encodedStart, encodedEnd) > _dst.length - _offset) {
+                throw new MalformedPacketException("data too long");
+            }
+            return Base64Codec.decode(encoded, encodedStart, encodedEnd, _dst, _offset);
+        }
+        byte[] r = getRawData();
+        if (r == null) {
+            return 0;
+        }
+        if (r.length > _dst.length - _offset) {
+            throw new MalformedPacketException("data too long");
+        }
+        System.arraycopy(r, 0, _dst, _offset, r.length);
+        return r.length;
+    }
+
+    /**
+     * Decoded PHYPayload. For an rxpk read from a PUSH_DATA, it is only built
+     * on the first call.
+     */
+    public PhyPayload decodeData() throws MalformedPacketException {
+        if (data == null && (encoded != null || raw != null)) {
+            data = new PhyPayload(ByteBuffer.wrap(getRawData()), registry);
+        }
         return data;
     }
 
+    /**
+     * Same as {@link #decodeData()}, a decoding failure of a lazy rxpk being
+     * wrapped into a RuntimeException.
+     */
+    public PhyPayload getData() {
+        try {
+            return decodeData();
+        } catch (MalformedPacketException ex) {
+            throw new RuntimeException("malformed rxpk data", ex);
+        }
+    }
+
     public static class Builder {
 
         private final Rxpk instance;
@@ -369,6 +558,33 @@ public class Rxpk {
 
     }
 
+    void writeJson(JsonWriter _json) throws MalformedPacketException {
+        _json.beginObject();
+        if (time != null) {
+            _json.name("time").value(time);
+        }
+        _json.name("tmst").value(tmst & 0xffffffffL);
+        _json.name("freq").value(freq, 6);
+        _json.name("chan").value(chan);
+        _json.name("rfch").value(rfch);
+        _json.name("stat").value(stat);
+        _json.name("modu").value(modu.name());
+
+        if (modu.equals(Modulation.LORA)) {
+            _json.name("codr").value(codr);
+            _json.name("lsnr").value(lsnr, 1);
+            _json.name("datr").value((String) datr);
+        } else {
+            _json.name("datr").value((Integer) datr);
+        }
+
+        _json.name("rssi").value(rssi);
+        byte[] phy = getRawData();
+        _json.name("size").value(phy.length);
+        _json.name("data").value(phy.length, _bb -> _bb.put(phy));
+        _json.endObject();
+    }
+
     public JSONObject toJson() throws MalformedPacketException {
         JSONObject output = new JSONObject();
 
@@ -389,9 +605,7 @@ public class Rxpk {
         output.put("rssi", rssi);
         output.put("size", size);
 
-        ByteBuffer bb = ByteBuffer.allocate(384);
-        data.toRaw(bb);
-        output.put("data", Base64.getEncoder().encodeToString(Arrays.copyOfRange(bb.array(), 0, bb.capacity() - bb.remaining())));
+        output.put("data", Base64.getEncoder().encodeToString(getRawData()));
 
         return output;
     }
@@ -24,7 +24,6 @@
 package com.github.cambierr.lorawanpacket.semtech;
 
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -44,6 +43,10 @@ public abstract class SemtechPacket {
     }
 
     public static SemtechPacket parse(ByteBuffer _raw) throws MalformedPacketException {
+        return parse(_raw, PacketRegistry.getDefault());
+    }
+
+    public static SemtechPacket parse(ByteBuffer _raw, PacketRegistry _registry) throws MalformedPacketException {
         _raw.order(ByteOrder.LITTLE_ENDIAN);
 
         if (_raw.remaining() < 4) {
@@ -60,12 +63,7 @@ public abstract class SemtechPacket {
 
         _raw.get(randoms);
 
-        Class<? extends SemtechPacket> mapper = PacketType.from(_raw.get()).getMapper();
-        try {
-            return mapper.getConstructor(byte[].class, ByteBuffer.class).newInstance(randoms, _raw);
-        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-            throw new RuntimeException("Could not create SemtechPacket", ex);
-        }
+        return _registry.get(_raw.get()).create(randoms, _raw);
     }
 
     public byte getVersion() {
@@ -80,6 +78,10 @@ public abstract class SemtechPacket {
         return identifier;
     }
     
+    public int length() throws MalformedPacketException {
+        return 4;
+    }
+
     public void toRaw(ByteBuffer _bb) throws MalformedPacketException{
         _bb.put((byte)0x02);
         _bb.put(randoms);
@@ -32,6 +32,18 @@ import org.json.JSONObject;
  */
 public class Stat {
 
+    private static final long TIME = JsonReader.key("time");
+    private static final long LATI = JsonReader.key("lati");
+    private static final long LONG = JsonReader.key("long");
+    private static final long LONGI = JsonReader.key("longi");
+    private static final long ALTI = JsonReader.key("alti");
+    private static final long RXNB = JsonReader.key("rxnb");
+    private static final long RXOK = JsonReader.key("rxok");
+    private static final long RXFW = JsonReader.key("rxfw");
+    private static final long ACKR = JsonReader.key("ackr");
+    private static final long DWNB = JsonReader.key("dwnb");
+    private static final long TXNB = JsonReader.key("txnb");
+
     private String time;
     private double lati;
     private double longi;
@@ -56,6 +68,42 @@ public class Stat {
         txnb = Integer.MAX_VALUE;
     }
 
+    Stat(JsonReader _json) throws MalformedPacketException {
+        this();
+
+        _json.beginObject();
+        while (_json.nextField()) {
+            long key = _json.key();
+            if (key == TIME) {
+                time = _json.readString();
+            } else if (key == LATI) {
+                lati = _json.readDouble();
+            } else if (key == LONG || key == LONGI) {
+                longi = _json.readDouble();
+            } else if (key == ALTI) {
+                alti = _json.readInt();
+            } else if (key == RXNB) {
+                rxnb = _json.readInt();
+            } else if (key == RXOK) {
+                rxok = _json.readInt();
+            } else if (key == RXFW) {
+                rxfw = _json.readInt();
+            } else if (key == ACKR) {
+                ackr = _json.readInt();
+            } else if (key == DWNB) {
+                dwnb = _json.readInt();
+            } else if (key == TXNB) {
+                txnb = _json.readInt();
+            } else {
+                _json.skipValue();
+            }
+        }
+
+        if (time == null) {
+            throw new MalformedPacketException("missing time");
+        }
+    }
+
     public Stat(JSONObject _json) throws MalformedPacketException {
 
         /**
@@ -286,6 +334,41 @@ public class Stat {
 
     }
 
+    void writeJson(JsonWriter _json) {
+        _json.beginObject();
+        if (time != null) {
+            _json.name("time").value(time);
+        }
+        if (lati != Double.MAX_VALUE) {
+            _json.name("lati").value(lati, 5);
+        }
+        if (longi != Double.MAX_VALUE) {
+            _json.name("long").value(longi, 5);
+        }
+        if (alti != Integer.MAX_VALUE) {
+            _json.name("alti").value(alti);
+        }
+        if (rxnb != Integer.MAX_VALUE) {
+            _json.name("rxnb").value(rxnb);
+        }
+        if (rxok != Integer.MAX_VALUE) {
+            _json.name("rxok").value(rxok);
+        }
+        if (rxfw != Integer.MAX_VALUE) {
+            _json.name("rxfw").value(rxfw);
+        }
+        if (ackr != Integer.MAX_VALUE) {
+            _json.name("ackr").value(ackr);
+        }
+        if (dwnb != Integer.MAX_VALUE) {
+            _json.name("dwnb").value(dwnb);
+        }
+        if (txnb != Integer.MAX_VALUE) {
+            _json.name("txnb").value(txnb);
+        }
+        _json.endObject();
+    }
+
     public JSONObject toJson() {
 
         JSONObject output = new JSONObject();
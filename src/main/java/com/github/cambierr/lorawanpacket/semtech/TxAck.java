@@ -23,6 +23,7 @@
  */
 package com.github.cambierr.lorawanpacket.semtech;
 
+import com.github.cambierr.lorawanpacket.lorawan.Identifiers;
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
 import java.nio.ByteBuffer;
 import org.json.JSONException;
@@ -34,13 +35,32 @@ import org.json.JSONObject;
  */
 public class TxAck extends SemtechPacket {
 
+    private byte[] gatewayEui;
     private Error error;
 
     public TxAck(byte[] _randoms, ByteBuffer _raw) throws MalformedPacketException {
         super(_randoms, PacketType.TX_ACK);
 
-        byte[] txt = new byte[_raw.remaining()];
+        if (_raw.remaining() < 8) {
+            throw new MalformedPacketException("too short");
+        }
+
+        gatewayEui = new byte[8];
+        _raw.get(gatewayEui);
+
+        // some forwarders terminate the JSON with a NUL
+        int end = _raw.limit();
+        while (end > _raw.position() && _raw.get(end - 1) == 0) {
+            end--;
+        }
+        byte[] txt = new byte[end - _raw.position()];
         _raw.get(txt);
+        _raw.position(_raw.limit());
+
+        if (txt.length == 0) {
+            error = Error.NONE;
+            return;
+        }
 
         JSONObject jo;
 
@@ -55,7 +75,8 @@ public class TxAck extends SemtechPacket {
         }
 
         if (!jo.getJSONObject("txpk_ack").has("error")) {
-            throw new MalformedPacketException("malformed json");
+            error = Error.NONE;
+            return;
         }
 
         error = Error.parse(jo.getJSONObject("txpk_ack").getString("error"));
@@ -63,6 +84,19 @@ public class TxAck extends SemtechPacket {
 
     private TxAck(byte[] _randoms) {
         super(_randoms, PacketType.TX_ACK);
+        gatewayEui = new byte[8];
+        error = Error.NONE;
+    }
+
+    public byte[] getGatewayEui() {
+        return gatewayEui;
+    }
+
+    /**
+     * @return the gateway EUI, read big-endian
+     */
+    public long getGatewayEuiLong() {
+        return Identifiers.gatewayEui(gatewayEui);
     }
 
     public Error getError() {
@@ -98,6 +132,22 @@ public class TxAck extends SemtechPacket {
             instance = new TxAck(_randoms);
         }
 
+        /**
+         * @param _gatewayEui 8 bytes, all zero by default
+         */
+        public Builder setGatewayEui(byte[] _gatewayEui) {
+            if (_gatewayEui == null || _gatewayEui.length != 8) {
+                throw new IllegalArgumentException("gateway EUI must be 8 bytes long");
+            }
+            instance.gatewayEui = _gatewayEui;
+            return this;
+        }
+
+        public Builder setGatewayEui(long _gatewayEui) {
+            instance.gatewayEui = Identifiers.gatewayEui(_gatewayEui);
+            return this;
+        }
+
         public Builder setError(Error _error) {
             instance.error = _error;
             return this;
@@ -109,10 +159,26 @@ public class TxAck extends SemtechPacket {
 
     }
 
+    @Override
+    public int length() throws MalformedPacketException {
+        JsonWriter json = JsonWriter.counting();
+        writeJson(json);
+        return super.length() + gatewayEui.length + json.count();
+    }
+
     @Override
     public void toRaw(ByteBuffer _raw) throws MalformedPacketException {
         super.toRaw(_raw);
-        _raw.put(new JSONObject().put("txpk_ack", new JSONObject().put("error", error.name())).toString().getBytes());
+        _raw.put(gatewayEui);
+        writeJson(new JsonWriter(_raw));
+    }
+
+    private void writeJson(JsonWriter _json) {
+        _json.beginObject();
+        _json.name("txpk_ack").beginObject();
+        _json.name("error").value(error.name());
+        _json.endObject();
+        _json.endObject();
     }
 
 }
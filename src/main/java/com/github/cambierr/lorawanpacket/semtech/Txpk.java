@@ -24,9 +24,9 @@
 package com.github.cambierr.lorawanpacket.semtech;
 
 import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PayloadRegistry;
 import com.github.cambierr.lorawanpacket.lorawan.PhyPayload;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.Base64;
 import org.json.JSONObject;
 
@@ -53,6 +53,10 @@ public class Txpk {
     private boolean ncrc;
 
     public Txpk(JSONObject _json) throws MalformedPacketException {
+        this(_json, PayloadRegistry.getDefault());
+    }
+
+    public Txpk(JSONObject _json, PayloadRegistry _registry) throws MalformedPacketException {
 
         /**
          * imme
@@ -96,7 +100,7 @@ public class Txpk {
         if (!_json.has("freq")) {
             throw new MalformedPacketException("missing freq");
         } else {
-            freq = _json.getDouble("stat");
+            freq = _json.getDouble("freq");
         }
 
         /**
@@ -204,7 +208,7 @@ public class Txpk {
                 throw new MalformedPacketException("malformed data");
             }
 
-            data = new PhyPayload(ByteBuffer.wrap(raw));
+            data = new PhyPayload(ByteBuffer.wrap(raw), _registry);
         }
 
         /**
@@ -349,6 +353,43 @@ public class Txpk {
         }
     }
 
+    void writeJson(JsonWriter _json) throws MalformedPacketException {
+        writeJson(_json, data.length(), data::toRaw);
+    }
+
+    /**
+     * Writes this txpk with another PHYPayload than its data.
+     */
+    void writeJson(JsonWriter _json, int _size, JsonWriter.RawWriter _data) throws MalformedPacketException {
+        _json.beginObject();
+        _json.name("imme").value(imme);
+        if (!imme) {
+            _json.name("tmst").value(tmst & 0xffffffffL);
+        }
+        if (time != null) {
+            _json.name("time").value(time);
+        }
+        _json.name("freq").value(freq, 6);
+        _json.name("rfch").value(rfch);
+        _json.name("powe").value(powe);
+        _json.name("modu").value(modu.name());
+
+        if (modu.equals(Modulation.LORA)) {
+            _json.name("codr").value(codr);
+            _json.name("ipol").value(ipol);
+            _json.name("datr").value((String) datr);
+        } else {
+            _json.name("fdev").value(fdev);
+            _json.name("datr").value((Integer) datr);
+        }
+
+        _json.name("prea").value(prea);
+        _json.name("size").value(_size);
+        _json.name("ncrc").value(ncrc);
+        _json.name("data").value(_size, _data);
+        _json.endObject();
+    }
+
     public JSONObject toJson() throws MalformedPacketException {
         JSONObject output = new JSONObject();
 
@@ -372,9 +413,9 @@ public class Txpk {
         output.put("size", getSize());
         output.put("ncrc", isNcrc());
 
-        ByteBuffer bb = ByteBuffer.allocate(384);
+        ByteBuffer bb = ByteBuffer.allocate(getData().length());
         getData().toRaw(bb);
-        output.put("data", Base64.getEncoder().encodeToString(Arrays.copyOfRange(bb.array(), 0, bb.capacity() - bb.remaining())));
+        output.put("data", Base64.getEncoder().encodeToString(bb.array()));
 
         return output;
     }
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.Modulation;
+import com.github.cambierr.lorawanpacket.semtech.Txpk;
+
+/**
+ * Time on air of a transmission, in microseconds like the concentrator
+ * counter (Semtech LoRa modem designer's guide formula).
+ *
+ * @author cambierr
+ */
+public final class AirTime {
+
+    private AirTime() {
+    }
+
+    /**
+     * @param _size PHYPayload length
+     */
+    public static int of(Txpk _txpk, int _size) {
+        if (_txpk.getModu() == Modulation.FSK) {
+            return fsk((Integer) _txpk.getDatr(), _txpk.getPrea() < 0 ? 5 : _txpk.getPrea(), _size);
+        }
+        String datr = (String) _txpk.getDatr();
+        int bw = datr.indexOf("BW");
+        if (!datr.startsWith("SF") || bw < 0) {
+            throw new IllegalArgumentException("invalid datr " + datr);
+        }
+        String codr = _txpk.getCodr();
+        if (codr == null || !codr.startsWith("4/")) {
+            throw new IllegalArgumentException("invalid codr " + codr);
+        }
+        return lora(Integer.parseInt(datr.substring(2, bw)), Integer.parseInt(datr.substring(bw + 2)),
+                Integer.parseInt(codr.substring(2)), _txpk.getPrea() < 0 ? 8 : _txpk.getPrea(), _size, !_txpk.isNcrc());
+    }
+
+    /**
+     * @param _sf spreading factor, 7 to 12
+     * @param _bandwidth in kHz
+     * @param _codingRate denominator of the coding rate, 5 to 8
+     * @param _preamble preamble symbols
+     * @param _size PHYPayload length
+     * @param _crc whether a payload CRC is sent (uplinks only)
+     */
+    public static int lora(int _sf, int _bandwidth, int _codingRate, int _preamble, int _size, boolean _crc) {
+        double symbol = (double) (1 << _sf) * 1000 / _bandwidth;
+        boolean lowDataRate = symbol > 16000;
+        double numerator = 8 * _size - 4 * _sf + 28 + (_crc ? 16 : 0);
+        double denominator = 4 * (_sf - (lowDataRate ? 2 : 0));
+        int payloadSymbols = 8 + (int) Math.max(Math.ceil(numerator / denominator) * _codingRate, 0);
+        return (int) Math.ceil((_preamble + 4.25 + payloadSymbols) * symbol);
+    }
+
+    /**
+     * @param _bitrate in bits per second
+     */
+    public static int fsk(int _bitrate, int _preamble, int _size) {
+        // preamble, 3 bytes sync word, length, payload, CRC
+        long bits = 8L * (_preamble + 3 + 1 + _size + 2);
+        return (int) ((bits * 1000000 + _bitrate - 1) / _bitrate);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Fixed set of direct buffers of the same size, shared between the receive
+ * loop and the threads buffers are handed to. When the pool is exhausted, a
+ * new buffer is allocated and later dropped on release if the pool is full.
+ *
+ * @author cambierr
+ */
+public class BufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final int bufferSize;
+
+    public BufferPool(int _count, int _bufferSize) {
+        if (_count < 1 || _bufferSize < 1) {
+            throw new IllegalArgumentException("invalid pool size");
+        }
+        free = new ArrayBlockingQueue<>(_count);
+        bufferSize = _bufferSize;
+        for (int i = 0; i < _count; i++) {
+            free.offer(ByteBuffer.allocateDirect(_bufferSize));
+        }
+    }
+
+    /**
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer bb = free.poll();
+        if (bb == null) {
+            bb = ByteBuffer.allocateDirect(bufferSize);
+        }
+        bb.clear();
+        return bb;
+    }
+
+    public void release(ByteBuffer _bb) {
+        if (_bb.capacity() == bufferSize && _bb.isDirect()) {
+            free.offer(_bb);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int available() {
+        return free.size();
+    }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs per device work on a fixed set of shard threads, without locks.
+ *
+ * The DevAddr of each event is hashed onto one of a power of 2 number of
+ * buckets, each bucket having its own FIFO queue and its own
+ * {@link DeviceHandler}, which holds the state (frame counters, sessions,
+ * ADR, ...) of the devices of the bucket. A bucket is run by one thread at
+ * a time, so the handler never needs to synchronize, and the events of a
+ * device are handled in submission order.
+ *
+ * Buckets are scheduled on the run queue of their home shard. An idle shard
+ * takes a waiting bucket from the run queue of the busiest shard once that
+ * queue holds at least the hot threshold, and becomes the new home of the
+ * bucket: the device state is handed off along with the bucket. Idle shards
+ * park until work is scheduled on them, or until a shard turns hot; they
+ * only look for work to steal every 10 ms otherwise.
+ *
+ * An exception thrown by a handler drops its event only: it is counted by
+ * {@link #getFailed()}, reported to the error handler, and the bucket goes
+ * on with its next events.
+ *
+ * @author cambierr
+ */
+public class DevAddrShards<T> implements Closeable {
+
+    private static final int BATCH = 32;
+    private static final long STEAL_INTERVAL = 10000000;
+
+    private final ToIntFunction<T> devAddr;
+    private final Bucket<T>[] buckets;
+    private final Shard<T>[] shards;
+    private final int hotThreshold;
+    private volatile boolean running;
+    private final AtomicInteger handoffs = new AtomicInteger();
+    private final AtomicLong failed = new AtomicLong();
+    private long dropped;
+    private volatile Consumer<RuntimeException> errorHandler;
+
+    /**
+     * @param _shards number of shard threads
+     * @param _buckets number of buckets, rounded up to a power of 2
+     * @param _devAddr reads the DevAddr (little-endian int) of an event
+     * @param _handlers creates the handler of a bucket, from its index
+     * @param _hotThreshold number of waiting buckets from which a shard gives
+     * work away
+     */
+    @SuppressWarnings("unchecked")
+    public DevAddrShards(int _shards, int _buckets, ToIntFunction<T> _devAddr, IntFunction<DeviceHandler<T>> _handlers, int _hotThreshold) {
+        if (_shards < 1 || _buckets < _shards || _buckets > 1 << 24 || _hotThreshold < 1) {
+            throw new IllegalArgumentException("invalid shard configuration");
+        }
+        int n = Integer.highestOneBit(_buckets);
+        if (n < _buckets) {
+            n <<= 1;
+        }
+        devAddr = _devAddr;
+        hotThreshold = _hotThreshold;
+        shards = (Shard<T>[]) new Shard<?>[_shards];
+        for (int i = 0; i < _shards; i++) {
+            shards[i] = new Shard<>(i);
+        }
+        buckets = (Bucket<T>[]) new Bucket<?>[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new Bucket<>(_handlers.apply(i), i % _shards);
+        }
+    }
+
+    /**
+     * @param _handler receives the exceptions thrown by the handlers, from
+     * any shard thread; the event is dropped and its bucket goes on
+     */
+    public DevAddrShards<T> setErrorHandler(Consumer<RuntimeException> _handler) {
+        if (running) {
+            throw new RuntimeException("shards already started");
+        }
+        errorHandler = _handler;
+        return this;
+    }
+
+    public synchronized DevAddrShards<T> start() {
+        if (running) {
+            throw new RuntimeException("shards already started");
+        }
+        running = true;
+        for (Shard<T> s : shards) {
+            s.thread = new Thread(() -> loop(s), "devaddr-shard-" + s.index);
+            s.thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Queues an event for the bucket of its DevAddr; may be called from any
+     * thread.
+     */
+    public void submit(T _event) {
+        Bucket<T> b = buckets[bucket(devAddr.applyAsInt(_event))];
+        b.events.offer(_event);
+        if (b.scheduled.compareAndSet(false, true)) {
+            schedule(b);
+        }
+    }
+
+    /**
+     * @return the index of the bucket, and so of the handler, of _devAddr
+     */
+    public int bucket(int _devAddr) {
+        int h = _devAddr * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & (buckets.length - 1);
+    }
+
+    /**
+     * @return the shard currently running the bucket of _devAddr
+     */
+    public int shard(int _devAddr) {
+        return buckets[bucket(_devAddr)].home;
+    }
+
+    public int getShards() {
+        return shards.length;
+    }
+
+    /**
+     * @return the number of buckets waiting on the run queue of _shard
+     */
+    public int getWaiting(int _shard) {
+        return shards[_shard].waiting.get();
+    }
+
+    /**
+     * @return the number of buckets moved from a hot shard to an idle one
+     */
+    public int getHandoffs() {
+        return handoffs.get();
+    }
+
+    /**
+     * @return the number of events whose handler threw
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of events still queued when closed, which were not
+     * handled
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Stops the shards once their current event is handled; the events left
+     * in the queues are dropped and counted. May be called from a handler.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Shard<T> s : shards) {
+            if (s.thread == Thread.currentThread()) {
+                // returns to the loop, which ends, after this handler
+                continue;
+            }
+            LockSupport.unpark(s.thread);
+            try {
+                s.thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Bucket<T> b : buckets) {
+            while (b.events.poll() != null) {
+                dropped++;
+            }
+        }
+    }
+
+    private void schedule(Bucket<T> _b) {
+        Shard<T> s = shards[_b.home];
+        int w = s.waiting.incrementAndGet();
+        s.runQueue.offer(_b);
+        if (s.parked) {
+            LockSupport.unpark(s.thread);
+        } else if (w >= hotThreshold) {
+            // wakes one idle shard to steal
+            for (Shard<T> o : shards) {
+                if (o.parked) {
+                    LockSupport.unpark(o.thread);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void loop(Shard<T> _s) {
+        int idle = 0;
+        while (running) {
+            Bucket<T> b = _s.runQueue.poll();
+            if (b != null) {
+                _s.waiting.decrementAndGet();
+            } else {
+                b = steal(_s);
+            }
+            if (b != null) {
+                drain(b);
+                idle = 0;
+            } else if (idle++ < 100) {
+                Thread.yield();
+            } else {
+                _s.parked = true;
+                if (_s.runQueue.isEmpty() && running) {
+                    LockSupport.parkNanos(STEAL_INTERVAL);
+                }
+                _s.parked = false;
+            }
+        }
+    }
+
+    private Bucket<T> steal(Shard<T> _thief) {
+        Shard<T> victim = null;
+        int max = hotThreshold - 1;
+        for (Shard<T> s : shards) {
+            int w = s.waiting.get();
+            if (s != _thief && w > max) {
+                victim = s;
+                max = w;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        Bucket<T> b = victim.runQueue.poll();
+        if (b != null) {
+            victim.waiting.decrementAndGet();
+            b.home = _thief.index;
+            handoffs.incrementAndGet();
+        }
+        return b;
+    }
+
+    private void drain(Bucket<T> _b) {
+        try {
+            T e;
+            for (int i = 0; i < BATCH && running && (e = _b.events.poll()) != null; i++) {
+                try {
+                    _b.handler.handle(devAddr.applyAsInt(e), e);
+                } catch (RuntimeException ex) {
+                    fail(ex);
+                }
+            }
+        } finally {
+            _b.scheduled.set(false);
+            if (!_b.events.isEmpty() && _b.scheduled.compareAndSet(false, true)) {
+                schedule(_b);
+            }
+        }
+    }
+
+    private void fail(RuntimeException _ex) {
+        failed.incrementAndGet();
+        Consumer<RuntimeException> h = errorHandler;
+        if (h != null) {
+            try {
+                h.accept(_ex);
+            } catch (RuntimeException ex) {
+                // nothing more to report to
+            }
+        }
+    }
+
+    /**
+     * Handles the events of the devices of one bucket. A handler is only
+     * called by one thread at a time, with happens-before between calls, so
+     * it may keep unsynchronized state.
+     */
+    public static interface DeviceHandler<T> {
+
+        void handle(int _devAddr, T _event);
+
+    }
+
+    private static final class Bucket<T> {
+
+        private final Queue<T> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final DeviceHandler<T> handler;
+        private volatile int home;
+
+        private Bucket(DeviceHandler<T> _handler, int _home) {
+            handler = _handler;
+            home = _home;
+        }
+    }
+
+    private static final class Shard<T> {
+
+        private final int index;
+        private final Queue<Bucket<T>> runQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private volatile boolean parked;
+        private Thread thread;
+
+        private Shard(int _index) {
+            index = _index;
+        }
+    }
+
+}
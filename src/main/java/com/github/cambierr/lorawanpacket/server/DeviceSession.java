@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+
+/**
+ * Activated device as seen by the network: its keys and its uplink frame
+ * counter. The key contexts and the counter belong to the thread that
+ * validates the uplinks of the device.
+ *
+ * @author cambierr
+ */
+public class DeviceSession {
+
+    private final int devAddr;
+    private final SessionCrypto nwkSKey;
+    private final SessionCrypto appSKey;
+    private int fCntUp;
+    private boolean uplinkSeen;
+
+    /**
+     * @param _devAddr the DevAddr, as read from the wire (little-endian)
+     */
+    public DeviceSession(int _devAddr, byte[] _nwkSKey, byte[] _appSKey) {
+        devAddr = _devAddr;
+        nwkSKey = new SessionCrypto(_nwkSKey);
+        appSKey = new SessionCrypto(_appSKey);
+    }
+
+    public int getDevAddr() {
+        return devAddr;
+    }
+
+    public SessionCrypto getNwkSKey() {
+        return nwkSKey;
+    }
+
+    public SessionCrypto getAppSKey() {
+        return appSKey;
+    }
+
+    /**
+     * @return the 32 bits counter of the last accepted uplink
+     */
+    public int getfCntUp() {
+        return fCntUp;
+    }
+
+    /**
+     * @return the 32 bits counter matching the 16 bits one of a frame: the
+     * smallest value not below the last accepted counter
+     */
+    public int expandfCnt(int _fCnt) {
+        return FrameCounter.expand(fCntUp, uplinkSeen, _fCnt);
+    }
+
+    /**
+     * @return false if _fCnt was already used, the frame being a replay
+     */
+    public boolean accept(int _fCnt) {
+        if (!FrameCounter.accepts(fCntUp, uplinkSeen, _fCnt)) {
+            return false;
+        }
+        fCntUp = _fCnt;
+        uplinkSeen = true;
+        return true;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+/**
+ * Where and when to send the downlink answering an uplink.
+ *
+ * @author cambierr
+ */
+public class DownlinkRoute {
+
+    private final Gateway gateway;
+    private final Reception reception;
+    private final int rx1Tmst;
+    private final int rx2Tmst;
+
+    public DownlinkRoute(Gateway _gateway, Reception _reception, int _rx1Tmst, int _rx2Tmst) {
+        gateway = _gateway;
+        reception = _reception;
+        rx1Tmst = _rx1Tmst;
+        rx2Tmst = _rx2Tmst;
+    }
+
+    public Gateway getGateway() {
+        return gateway;
+    }
+
+    /**
+     * @return the uplink reception of the chosen gateway
+     */
+    public Reception getReception() {
+        return reception;
+    }
+
+    /**
+     * @return the gateway counter value (microseconds, wrapping) opening RX1
+     */
+    public int getRx1Tmst() {
+        return rx1Tmst;
+    }
+
+    public int getRx2Tmst() {
+        return rx2Tmst;
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.Txpk;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Holds downlinks until a lead time before their transmission, then releases
+ * them (so that the PULL_RESP reaches the gateway in time, but not so early
+ * that its JIT queue fills up). Pending transmissions sit in a
+ * {@link TimingWheel}, so scheduling and cancelling are O(1); a transmission
+ * overlapping another pending one on the same gateway, compared on the
+ * wrapping concentrator counter, is rejected.
+ *
+ * Not thread safe and lock free: one thread schedules, cancels and calls
+ * {@link #advance}.
+ *
+ * @author cambierr
+ */
+public class DownlinkScheduler {
+
+    private final long leadTime;
+    private final Consumer<ScheduledDownlink> sender;
+    private final TimingWheel<ScheduledDownlink> wheel;
+    private final Map<Gateway, List<ScheduledDownlink>> pending = new HashMap<>();
+    private final Consumer<ScheduledDownlink> release = this::release;
+    private long now;
+
+    private long rejected;
+
+    /**
+     * @param _leadTime how long before its transmission a downlink is
+     * released, in the unit of the timestamps (typically milliseconds)
+     * @param _tick resolution of the release time
+     * @param _now current time
+     * @param _sender receives the released downlinks, from {@link #advance}
+     */
+    public DownlinkScheduler(long _leadTime, long _tick, long _now, Consumer<ScheduledDownlink> _sender) {
+        leadTime = _leadTime;
+        sender = _sender;
+        wheel = new TimingWheel<>(_tick, 1024, _now);
+        now = _now;
+    }
+
+    /**
+     * Schedules a txpk at its tmst; its airtime is computed from its
+     * parameters and the PHYPayload size.
+     *
+     * @param _txTime the server time matching the tmst of the txpk
+     * @see #schedule(Gateway, Txpk, int, int, long)
+     */
+    public ScheduledDownlink schedule(Gateway _gateway, Txpk _txpk, int _size, long _txTime) {
+        return schedule(_gateway, _txpk, _txpk.getTmst(), AirTime.of(_txpk, _size), _txTime);
+    }
+
+    /**
+     * @param _tmst concentrator counter value of the transmission
+     * @param _airtime time on air, in microseconds
+     * @param _txTime the server time matching _tmst
+     * @return the scheduled downlink, or null if it overlaps another one of
+     * the gateway or its time is already past
+     */
+    public ScheduledDownlink schedule(Gateway _gateway, Txpk _txpk, int _tmst, int _airtime, long _txTime) {
+        if (_txTime <= now) {
+            rejected++;
+            return null;
+        }
+        ScheduledDownlink d = new ScheduledDownlink(_gateway, _txpk, _tmst, _airtime, _txTime);
+        List<ScheduledDownlink> queue = pending.get(_gateway);
+        if (queue == null) {
+            queue = new ArrayList<>(4);
+            pending.put(_gateway, queue);
+        }
+        if (!_txpk.isImme()) {
+            for (ScheduledDownlink other : queue) {
+                if (!other.getTxpk().isImme() && d.overlaps(other)) {
+                    rejected++;
+                    return null;
+                }
+            }
+        }
+        queue.add(d);
+        d.timeout = wheel.schedule(d, _txTime - leadTime);
+        return d;
+    }
+
+    /**
+     * @return false if the downlink was already released or cancelled
+     */
+    public boolean cancel(ScheduledDownlink _downlink) {
+        if (_downlink.timeout == null || !wheel.cancel(_downlink.timeout)) {
+            return false;
+        }
+        forget(_downlink);
+        return true;
+    }
+
+    /**
+     * Releases the downlinks due at _now.
+     *
+     * @return the number of released downlinks
+     */
+    public int advance(long _now) {
+        now = _now;
+        return wheel.advance(_now, release);
+    }
+
+    public int size() {
+        return wheel.size();
+    }
+
+    /**
+     * @return the number of downlinks refused for overlap or lateness
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    private void release(ScheduledDownlink _downlink) {
+        forget(_downlink);
+        sender.accept(_downlink);
+    }
+
+    private void forget(ScheduledDownlink _downlink) {
+        List<ScheduledDownlink> queue = pending.get(_downlink.getGateway());
+        queue.remove(_downlink);
+        if (queue.isEmpty()) {
+            pending.remove(_downlink.getGateway());
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+/**
+ * Uplink frame counter rules shared by the session holders: the 16 bits
+ * counter of a frame is expanded to 32 bits from the last accepted one, and
+ * a counter is accepted only when above it.
+ *
+ * @author cambierr
+ */
+final class FrameCounter {
+
+    private FrameCounter() {
+    }
+
+    /**
+     * @param _last the 32 bits counter of the last accepted uplink
+     * @param _seen false if no uplink was accepted yet
+     * @return the 32 bits counter matching the 16 bits one of a frame: the
+     * smallest value not below _last
+     */
+    static int expand(int _last, boolean _seen, int _fCnt) {
+        if (!_seen) {
+            return _fCnt & 0xffff;
+        }
+        int f = (_last & 0xffff0000) | (_fCnt & 0xffff);
+        if (Integer.compareUnsigned(f, _last) < 0) {
+            f += 0x10000;
+        }
+        return f;
+    }
+
+    /**
+     * @return false if _fCnt was already used, the frame being a replay
+     */
+    static boolean accepts(int _last, boolean _seen, int _fCnt) {
+        return !_seen || Integer.compareUnsigned(_fCnt, _last) > 0;
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.net.SocketAddress;
+
+/**
+ * State of a gateway as seen by a {@link GatewayRegistry}. Every field is
+ * readable without locking; updates come from the receive threads.
+ *
+ * @author cambierr
+ */
+public class Gateway {
+
+    private final long eui;
+
+    private volatile SocketAddress downlinkAddress;
+    private volatile SocketAddress uplinkAddress;
+    private volatile long lastPullData;
+    private volatile long lastPushData;
+    private volatile long lastSeen;
+
+    private volatile long pullDataCount;
+    private volatile long pushDataCount;
+    private volatile long retransmissions;
+    private int lastPullToken = -1;
+    private int lastPushToken = -1;
+
+    private long txPeriodStart;
+    private long txAirtime;
+    private long txPreviousAirtime;
+    private volatile long transmissions;
+
+    Gateway(long _eui, long _now) {
+        eui = _eui;
+        lastSeen = _now;
+        txPeriodStart = _now;
+    }
+
+    synchronized void pullData(SocketAddress _from, int _token, long _now) {
+        downlinkAddress = _from;
+        lastPullData = _now;
+        lastSeen = _now;
+        pullDataCount++;
+        if (_token == lastPullToken) {
+            retransmissions++;
+        }
+        lastPullToken = _token;
+    }
+
+    synchronized void pushData(SocketAddress _from, int _token, long _now) {
+        uplinkAddress = _from;
+        lastPushData = _now;
+        lastSeen = _now;
+        pushDataCount++;
+        if (_token == lastPushToken) {
+            retransmissions++;
+        }
+        lastPushToken = _token;
+    }
+
+    /**
+     * Accounts a scheduled transmission against the duty cycle.
+     *
+     * @param _airtime time on air, in microseconds
+     * @param _period duty-cycle period, in the unit of _now (milliseconds)
+     */
+    synchronized void transmission(long _airtime, long _now, long _period) {
+        roll(_now, _period);
+        txAirtime += _airtime;
+        transmissions++;
+    }
+
+    /**
+     * Airtime used during the last _period, in microseconds, estimated from
+     * the current and the previous period (sliding window counter).
+     */
+    synchronized long airtime(long _now, long _period) {
+        roll(_now, _period);
+        long elapsed = _now - txPeriodStart;
+        return txAirtime + txPreviousAirtime * (_period - elapsed) / _period;
+    }
+
+    private void roll(long _now, long _period) {
+        long elapsed = _now - txPeriodStart;
+        if (elapsed >= 2 * _period) {
+            txPreviousAirtime = 0;
+            txAirtime = 0;
+            txPeriodStart = _now;
+        } else if (elapsed >= _period) {
+            txPreviousAirtime = txAirtime;
+            txAirtime = 0;
+            txPeriodStart += _period;
+        }
+    }
+
+    /**
+     * @return the gateway EUI, most significant byte first on the wire
+     */
+    public long getEui() {
+        return eui;
+    }
+
+    /**
+     * @return where PULL_RESP must be sent (source of the last PULL_DATA), or
+     * null if the gateway never sent a PULL_DATA
+     */
+    public SocketAddress getDownlinkAddress() {
+        return downlinkAddress;
+    }
+
+    /**
+     * @return the source of the last PUSH_DATA
+     */
+    public SocketAddress getUplinkAddress() {
+        return uplinkAddress;
+    }
+
+    public long getLastPullData() {
+        return lastPullData;
+    }
+
+    public long getLastPushData() {
+        return lastPushData;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public long getPullDataCount() {
+        return pullDataCount;
+    }
+
+    public long getPushDataCount() {
+        return pushDataCount;
+    }
+
+    /**
+     * @return the number of PUSH_DATA/PULL_DATA repeating the token of the
+     * previous one, i.e. resent because the acknowledgement was lost
+     */
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getTransmissions() {
+        return transmissions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Gateway[%016x]", eui);
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.PullData;
+import com.github.cambierr.lorawanpacket.semtech.PushData;
+import com.github.cambierr.lorawanpacket.semtech.SemtechPacket;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Gateways known to the server, keyed by their EUI as a long. Lookups probe
+ * an open-addressing table without locking nor allocating; adding a gateway
+ * takes a lock and removals (expiry) or growth rebuild and publish a new
+ * table, so readers never see a broken probe sequence.
+ *
+ * @author cambierr
+ */
+public class GatewayRegistry {
+
+    private final long expiry;
+    private volatile AtomicReferenceArray<Gateway> table = new AtomicReferenceArray<>(64);
+    private int size;
+
+    /**
+     * @param _expiry milliseconds after which a silent gateway is removed by
+     * {@link #expire}
+     */
+    public GatewayRegistry(long _expiry) {
+        expiry = _expiry;
+    }
+
+    /**
+     * @return the gateway, or null if unknown
+     */
+    public Gateway get(long _eui) {
+        AtomicReferenceArray<Gateway> t = table;
+        int mask = t.length() - 1;
+        for (int i = index(_eui, mask);; i = (i + 1) & mask) {
+            Gateway g = t.get(i);
+            if (g == null || g.getEui() == _eui) {
+                return g;
+            }
+        }
+    }
+
+    /**
+     * Records a PULL_DATA, from which downlinks are routed.
+     */
+    public Gateway pullData(long _eui, SocketAddress _from, int _token, long _now) {
+        Gateway g = getOrCreate(_eui, _now);
+        g.pullData(_from, _token, _now);
+        return g;
+    }
+
+    public Gateway pushData(long _eui, SocketAddress _from, int _token, long _now) {
+        Gateway g = getOrCreate(_eui, _now);
+        g.pushData(_from, _token, _now);
+        return g;
+    }
+
+    /**
+     * Records a received PUSH_DATA or PULL_DATA, other packets are ignored.
+     *
+     * @return the updated gateway, or null
+     */
+    public Gateway update(SemtechPacket _packet, SocketAddress _from, long _now) {
+        if (_packet instanceof PullData) {
+            return pullData(((PullData) _packet).getGatewayEuiLong(), _from, token(_packet), _now);
+        }
+        if (_packet instanceof PushData) {
+            return pushData(((PushData) _packet).getGatewayEuiLong(), _from, token(_packet), _now);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the gateways not seen since _now - expiry.
+     *
+     * @return the number of removed gateways
+     */
+    public synchronized int expire(long _now) {
+        AtomicReferenceArray<Gateway> t = table;
+        int removed = 0;
+        for (int i = 0; i < t.length(); i++) {
+            Gateway g = t.get(i);
+            if (g != null && _now - g.getLastSeen() > expiry) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            rebuild(t.length(), _now);
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public void forEach(Consumer<Gateway> _consumer) {
+        AtomicReferenceArray<Gateway> t = table;
+        for (int i = 0; i < t.length(); i++) {
+            Gateway g = t.get(i);
+            if (g != null) {
+                _consumer.accept(g);
+            }
+        }
+    }
+
+    private Gateway getOrCreate(long _eui, long _now) {
+        Gateway g = get(_eui);
+        if (g != null) {
+            return g;
+        }
+        synchronized (this) {
+            g = get(_eui);
+            if (g != null) {
+                return g;
+            }
+            if (2 * (size + 1) > table.length()) {
+                rebuild(2 * table.length(), Long.MIN_VALUE);
+            }
+            g = new Gateway(_eui, _now);
+            insert(table, g);
+            size++;
+            return g;
+        }
+    }
+
+    /**
+     * Copies the live gateways into a new table and publishes it.
+     */
+    private void rebuild(int _capacity, long _now) {
+        AtomicReferenceArray<Gateway> old = table;
+        AtomicReferenceArray<Gateway> t = new AtomicReferenceArray<>(_capacity);
+        int count = 0;
+        for (int i = 0; i < old.length(); i++) {
+            Gateway g = old.get(i);
+            if (g != null && (_now == Long.MIN_VALUE || _now - g.getLastSeen() <= expiry)) {
+                insert(t, g);
+                count++;
+            }
+        }
+        size = count;
+        table = t;
+    }
+
+    private static void insert(AtomicReferenceArray<Gateway> _table, Gateway _g) {
+        int mask = _table.length() - 1;
+        int i = index(_g.getEui(), mask);
+        while (_table.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        _table.set(i, _g);
+    }
+
+    private static int index(long _eui, int _mask) {
+        long h = _eui * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    private static int token(SemtechPacket _packet) {
+        byte[] r = _packet.getRandoms();
+        return (r[0] & 0xff) << 8 | (r[1] & 0xff);
+    }
+
+}
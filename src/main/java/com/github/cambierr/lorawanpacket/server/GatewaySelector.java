@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+/**
+ * Chooses the gateway answering an uplink among all the receptions merged by
+ * the {@link UplinkDeduplicator}: their link score is lowered by the recent
+ * transmit load of the gateway, and a gateway whose duty-cycle budget can not
+ * afford the downlink, or which never sent a PULL_DATA, is skipped. A
+ * downlink is thus routed as long as any receiving gateway can send it.
+ *
+ * Transmissions must be reported with {@link #transmitted} for the load and
+ * the duty cycle to be accounted. Airtimes and the duty-cycle period are in
+ * microseconds, as computed by {@link AirTime}; current times are in
+ * milliseconds, like those given to the {@link GatewayRegistry}.
+ *
+ * @author cambierr
+ */
+public class GatewaySelector {
+
+    private final GatewayRegistry registry;
+    private int rx1Delay = 1000000;
+    private int rx2Delay = 2000000;
+    private long dutyCyclePeriod = 3600000000L;
+    private double dutyCycle = 0.1;
+    private double loadPenalty = 10;
+
+    public GatewaySelector(GatewayRegistry _registry) {
+        registry = _registry;
+    }
+
+    /**
+     * @param _rx1Delay microseconds between the end of the uplink and RX1
+     * @param _rx2Delay microseconds between the end of the uplink and RX2
+     */
+    public GatewaySelector setRxDelays(int _rx1Delay, int _rx2Delay) {
+        if (_rx1Delay < 0 || _rx2Delay < _rx1Delay) {
+            throw new IllegalArgumentException("invalid RX delays");
+        }
+        rx1Delay = _rx1Delay;
+        rx2Delay = _rx2Delay;
+        return this;
+    }
+
+    /**
+     * @param _dutyCycle maximum fraction of airtime, 0.1 for 10%
+     * @param _period period over which it is enforced, in microseconds like
+     * the airtimes ({@link AirTime}); one hour by default
+     */
+    public GatewaySelector setDutyCycle(double _dutyCycle, long _period) {
+        if (_dutyCycle <= 0 || _dutyCycle > 1 || _period < 1000) {
+            throw new IllegalArgumentException("invalid duty cycle");
+        }
+        dutyCycle = _dutyCycle;
+        dutyCyclePeriod = _period;
+        return this;
+    }
+
+    /**
+     * @param _loadPenalty score removed from a gateway that used its whole
+     * duty-cycle budget, proportionally below
+     */
+    public GatewaySelector setLoadPenalty(double _loadPenalty) {
+        loadPenalty = _loadPenalty;
+        return this;
+    }
+
+    /**
+     * @param _airtime time on air of the downlink, in microseconds
+     * @param _now current time, in milliseconds like the registry
+     * @return the route, or null if none of the receiving gateways can
+     * transmit
+     */
+    public DownlinkRoute select(Uplink _uplink, long _airtime, long _now) {
+        long budget = (long) (dutyCycle * dutyCyclePeriod);
+        Gateway bestGateway = null;
+        Reception bestReception = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0, n = _uplink.getReceptionCount(); i < n; i++) {
+            Reception r = _uplink.getReception(i);
+            Gateway g = registry.get(r.getGatewayEui());
+            if (g == null || g.getDownlinkAddress() == null) {
+                continue;
+            }
+            long used = g.airtime(_now, dutyCyclePeriod / 1000);
+            if (used + _airtime > budget) {
+                continue;
+            }
+            double score = r.getScore() - loadPenalty * used / budget;
+            if (score > bestScore) {
+                bestScore = score;
+                bestGateway = g;
+                bestReception = r;
+            }
+        }
+        if (bestGateway == null) {
+            return null;
+        }
+        int tmst = bestReception.getRxpk().getTmst();
+        return new DownlinkRoute(bestGateway, bestReception, tmst + rx1Delay, tmst + rx2Delay);
+    }
+
+    /**
+     * Accounts a downlink sent through a gateway.
+     *
+     * @param _airtime time on air, in microseconds
+     * @param _now current time, in milliseconds
+     */
+    public void transmitted(Gateway _gateway, long _airtime, long _now) {
+        _gateway.transmission(_airtime, _now, dutyCyclePeriod / 1000);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.TxAck;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * PULL_RESP datagrams waiting for their TX_ACK, keyed by (gateway EUI,
+ * token) in an open-addressing table. Each one gets a future completed with
+ * the {@link TxAck.Error} reported by the gateway (NONE when transmitted),
+ * or exceptionally with a {@link TimeoutException} when no TX_ACK arrived in
+ * time. Timeouts are tracked by a {@link TimingWheel}, not one timer each.
+ *
+ * Methods may be called from any thread; futures are completed outside of
+ * the internal lock, by the caller of {@link #complete} or {@link #expire}.
+ *
+ * @author cambierr
+ */
+public class InFlightDownlinks {
+
+    private static final int EMPTY = -1;
+
+    private final long timeout;
+    private final TimingWheel<Entry> wheel;
+    private final List<Entry> expired = new ArrayList<>();
+    private final Consumer<Entry> expiry = expired::add;
+
+    private long[] euis = new long[64];
+    private int[] tokens = new int[64];
+    private Entry[] entries = new Entry[64];
+    private int size;
+
+    /**
+     * @param _timeout how long to wait for a TX_ACK, in the unit of the
+     * timestamps (typically milliseconds)
+     * @param _now current time
+     */
+    public InFlightDownlinks(long _timeout, long _now) {
+        timeout = _timeout;
+        wheel = new TimingWheel<>(Math.max(1, _timeout / 16), 64, _now);
+        Arrays.fill(tokens, EMPTY);
+    }
+
+    /**
+     * Tracks a PULL_RESP sent to a gateway. A downlink still in flight with the
+     * same key fails with an IllegalStateException.
+     *
+     * @param _token the 16 bits token of the PULL_RESP
+     * @return completed with the error of the TX_ACK
+     */
+    public CompletableFuture<TxAck.Error> register(long _gatewayEui, int _token, long _now) {
+        Entry entry = new Entry(_gatewayEui, _token & 0xffff);
+        Entry previous;
+        synchronized (this) {
+            previous = remove(_gatewayEui, _token & 0xffff);
+            if (2 * (size + 1) > entries.length) {
+                resize(2 * entries.length);
+            }
+            insert(entry);
+            entry.timeout = wheel.schedule(entry, _now + timeout);
+        }
+        if (previous != null) {
+            previous.future.completeExceptionally(new IllegalStateException("token reused"));
+        }
+        return entry.future;
+    }
+
+    /**
+     * @return false if no downlink was in flight for this key
+     */
+    public boolean complete(long _gatewayEui, int _token, TxAck.Error _error) {
+        Entry entry;
+        synchronized (this) {
+            entry = remove(_gatewayEui, _token & 0xffff);
+        }
+        if (entry == null) {
+            return false;
+        }
+        entry.future.complete(_error);
+        return true;
+    }
+
+    public boolean complete(TxAck _ack) {
+        byte[] r = _ack.getRandoms();
+        return complete(_ack.getGatewayEuiLong(), (r[0] & 0xff) << 8 | (r[1] & 0xff), _ack.getError());
+    }
+
+    /**
+     * Fails the downlinks whose TX_ACK is overdue.
+     *
+     * @return the number of expired downlinks
+     */
+    public int expire(long _now) {
+        Entry[] done;
+        synchronized (this) {
+            wheel.advance(_now, expiry);
+            done = expired.toArray(new Entry[expired.size()]);
+            expired.clear();
+            for (Entry e : done) {
+                remove(e.eui, e.token);
+            }
+        }
+        for (Entry e : done) {
+            e.future.completeExceptionally(new TimeoutException("no TX_ACK"));
+        }
+        return done.length;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private Entry remove(long _eui, int _token) {
+        int mask = entries.length - 1;
+        int i = index(_eui, _token, mask);
+        while (tokens[i] != EMPTY) {
+            if (tokens[i] == _token && euis[i] == _eui) {
+                Entry e = entries[i];
+                wheel.cancel(e.timeout);
+                deleteAt(i);
+                size--;
+                return e;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Backward shift deletion: moves the following entries of the probe
+     * sequence up, so that no tombstone is needed.
+     */
+    private void deleteAt(int _slot) {
+        int mask = entries.length - 1;
+        int hole = _slot;
+        for (int i = (hole + 1) & mask; tokens[i] != EMPTY; i = (i + 1) & mask) {
+            int home = index(euis[i], tokens[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                euis[hole] = euis[i];
+                tokens[hole] = tokens[i];
+                entries[hole] = entries[i];
+                hole = i;
+            }
+        }
+        tokens[hole] = EMPTY;
+        entries[hole] = null;
+    }
+
+    private void insert(Entry _e) {
+        int mask = entries.length - 1;
+        int i = index(_e.eui, _e.token, mask);
+        while (tokens[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        euis[i] = _e.eui;
+        tokens[i] = _e.token;
+        entries[i] = _e;
+        size++;
+    }
+
+    private void resize(int _capacity) {
+        Entry[] old = entries;
+        euis = new long[_capacity];
+        tokens = new int[_capacity];
+        entries = new Entry[_capacity];
+        Arrays.fill(tokens, EMPTY);
+        size = 0;
+        for (Entry e : old) {
+            if (e != null) {
+                insert(e);
+            }
+        }
+    }
+
+    private static int index(long _eui, int _token, int _mask) {
+        long h = (_eui ^ ((long) _token << 48)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    private static final class Entry {
+
+        private final long eui;
+        private final int token;
+        private final CompletableFuture<TxAck.Error> future = new CompletableFuture<>();
+        private TimingWheel.Timeout<Entry> timeout;
+
+        private Entry(long _eui, int _token) {
+            eui = _eui;
+            token = _token;
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.semtech.PacketRegistry;
+import com.github.cambierr.lorawanpacket.semtech.SemtechPacket;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * N {@link SemtechServer} reactors listening on the same UDP port through
+ * SO_REUSEPORT: the kernel hashes each gateway flow to one socket, so
+ * gateways are spread across reactor threads. Every reactor has its own
+ * channel, thread, buffer pool and handler, and survives bad datagrams and
+ * failing handlers as a {@link SemtechServer} does.
+ *
+ * The reactor of each gateway address is remembered for downlinks; the
+ * addresses no packet came from during the route expiry are forgotten, so
+ * that gateways changing port behind a NAT do not grow the routes forever.
+ *
+ * SO_REUSEPORT is only exposed by Java 9 and later, on Linux and BSD;
+ * starting more than one reactor without it fails.
+ *
+ * @author cambierr
+ */
+public class MultiReactorServer implements Closeable {
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+    private final InetSocketAddress bindAddress;
+    private final int reactorCount;
+    private final Supplier<PacketHandler> handlers;
+    private PacketRegistry registry = PacketRegistry.getDefault();
+    private int poolSize = 16;
+    private int bufferSize = SemtechServer.DEFAULT_BUFFER_SIZE;
+    private long routeExpiry = 300000;
+
+    private final List<SemtechServer> reactors = new ArrayList<>();
+    private final Map<SocketAddress, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    /**
+     * @param _handlers called once per reactor; a handler is only used by the
+     * thread of its reactor
+     */
+    public MultiReactorServer(InetSocketAddress _bindAddress, int _reactors, Supplier<PacketHandler> _handlers) {
+        if (_reactors < 1) {
+            throw new IllegalArgumentException("at least one reactor is required");
+        }
+        bindAddress = _bindAddress;
+        reactorCount = _reactors;
+        handlers = _handlers;
+    }
+
+    public static boolean isReusePortSupported() {
+        return SO_REUSEPORT != null;
+    }
+
+    public MultiReactorServer setRegistry(PacketRegistry _registry) {
+        checkNotStarted();
+        registry = _registry;
+        return this;
+    }
+
+    /**
+     * @param _count number of buffers of each reactor pool
+     * @param _bufferSize size of the receive buffers
+     */
+    public MultiReactorServer setBufferPool(int _count, int _bufferSize) {
+        checkNotStarted();
+        poolSize = _count;
+        bufferSize = _bufferSize;
+        return this;
+    }
+
+    /**
+     * @param _routeExpiry milliseconds after which the route of an address
+     * no packet came from is forgotten; 5 minutes by default
+     */
+    public MultiReactorServer setRouteExpiry(long _routeExpiry) {
+        checkNotStarted();
+        if (_routeExpiry < 1) {
+            throw new IllegalArgumentException("invalid route expiry");
+        }
+        routeExpiry = _routeExpiry;
+        return this;
+    }
+
+    public synchronized MultiReactorServer start() throws IOException {
+        checkNotStarted();
+        if (reactorCount > 1 && SO_REUSEPORT == null) {
+            throw new RuntimeException("SO_REUSEPORT is not supported by this JVM");
+        }
+        InetSocketAddress address = bindAddress;
+        try {
+            for (int i = 0; i < reactorCount; i++) {
+                Routing routing = new Routing(handlers.get());
+                SemtechServer reactor = new ReusePortServer(address, routing)
+                        .setRegistry(registry)
+                        .setBufferPool(new BufferPool(poolSize, bufferSize))
+                        .setName("semtech-reactor-" + i);
+                routing.reactor = reactor;
+                reactors.add(reactor);
+                reactor.start();
+                // an ephemeral port is only chosen once
+                address = (InetSocketAddress) reactor.getLocalAddress();
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        return this;
+    }
+
+    /**
+     * Sends a datagram from the reactor that last received a packet from
+     * _to, i.e. from the socket the kernel hashes the gateway flow to.
+     * Unknown destinations get any reactor: all sockets share the port.
+     *
+     * @return false if the socket send buffer was full, see
+     * {@link SemtechServer#send}
+     */
+    public boolean send(ByteBuffer _datagram, SocketAddress _to) throws IOException {
+        if (reactors.isEmpty()) {
+            throw new RuntimeException("server not started");
+        }
+        Route route = routes.get(_to);
+        SemtechServer reactor = route != null ? route.reactor : reactors.get((_to.hashCode() & 0x7fffffff) % reactors.size());
+        return reactor.send(_datagram, _to);
+    }
+
+    public SocketAddress getLocalAddress() throws IOException {
+        if (reactors.isEmpty()) {
+            throw new RuntimeException("server not started");
+        }
+        return reactors.get(0).getLocalAddress();
+    }
+
+    public List<SemtechServer> getReactors() {
+        return Collections.unmodifiableList(reactors);
+    }
+
+    /**
+     * @return the number of gateway addresses with a known reactor
+     */
+    public int getRoutes() {
+        return routes.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (SemtechServer reactor : reactors) {
+            try {
+                reactor.close();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        reactors.clear();
+        routes.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkNotStarted() {
+        if (!reactors.isEmpty()) {
+            throw new RuntimeException("server already started");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the reactor of each gateway address a packet was decoded
+     * from, and sweeps the expired routes every half expiry.
+     */
+    private final class Routing implements PacketHandler {
+
+        private final PacketHandler handler;
+        private SemtechServer reactor;
+
+        private Routing(PacketHandler _handler) {
+            handler = _handler;
+        }
+
+        @Override
+        public void handle(SemtechPacket _packet, SocketAddress _from) {
+            long now = System.currentTimeMillis();
+            Route route = routes.get(_from);
+            if (route == null || route.reactor != reactor) {
+                routes.put(_from, new Route(reactor, now));
+            } else {
+                route.lastSeen = now;
+            }
+            long next = nextSweep.get();
+            if (now >= next && nextSweep.compareAndSet(next, now + routeExpiry / 2)) {
+                routes.values().removeIf(r -> now - r.lastSeen > routeExpiry);
+            }
+            handler.handle(_packet, _from);
+        }
+
+        @Override
+        public void malformed(ByteBuffer _raw, SocketAddress _from, MalformedPacketException _ex) {
+            handler.malformed(_raw, _from, _ex);
+        }
+
+        @Override
+        public void failed(SemtechPacket _packet, SocketAddress _from, RuntimeException _ex) {
+            handler.failed(_packet, _from, _ex);
+        }
+    }
+
+    private static final class Route {
+
+        private final SemtechServer reactor;
+        private volatile long lastSeen;
+
+        private Route(SemtechServer _reactor, long _now) {
+            reactor = _reactor;
+            lastSeen = _now;
+        }
+    }
+
+    private static final class ReusePortServer extends SemtechServer {
+
+        private ReusePortServer(SocketAddress _bindAddress, PacketHandler _handler) {
+            super(_bindAddress, _handler);
+        }
+
+        @Override
+        protected DatagramChannel open(SocketAddress _bindAddress) throws IOException {
+            DatagramChannel channel = DatagramChannel.open();
+            try {
+                if (SO_REUSEPORT != null && channel.supportedOptions().contains(SO_REUSEPORT)) {
+                    channel.setOption(SO_REUSEPORT, true);
+                }
+                return channel.bind(_bindAddress);
+            } catch (IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+    }
+
+}
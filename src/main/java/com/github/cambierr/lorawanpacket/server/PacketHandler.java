@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.semtech.SemtechPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the packets decoded by a {@link SemtechServer}, on its receive
+ * thread. The receive buffer is recycled as soon as a method returns.
+ *
+ * @author cambierr
+ */
+public interface PacketHandler {
+
+    /**
+     * @param _packet a PUSH_DATA, PULL_DATA or TX_ACK; acknowledgements were
+     * already sent
+     * @param _from the address of the gateway
+     * @throws RuntimeException only drops the packet, the server keeps
+     * running and reports it to {@link #failed}
+     */
+    void handle(SemtechPacket _packet, SocketAddress _from);
+
+    /**
+     * Called for datagrams that could not be decoded; they are dropped.
+     *
+     * @param _raw the datagram, only valid during the call
+     */
+    default void malformed(ByteBuffer _raw, SocketAddress _from, MalformedPacketException _ex) {
+    }
+
+    /**
+     * Called when {@link #handle}, or the server's DatagramHandler, threw,
+     * and once when the receive thread stops on an I/O error.
+     *
+     * @param _packet the packet being handled, null when the
+     * DatagramHandler or the receive thread failed
+     * @param _from null when the receive thread failed
+     */
+    default void failed(SemtechPacket _packet, SocketAddress _from, RuntimeException _ex) {
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.Rxpk;
+
+/**
+ * One copy of an uplink, as received by one gateway.
+ *
+ * @author cambierr
+ */
+public class Reception {
+
+    private final long gatewayEui;
+    private final Rxpk rxpk;
+    private final long receivedAt;
+    private final double score;
+
+    public Reception(long _gatewayEui, Rxpk _rxpk, long _receivedAt) {
+        gatewayEui = _gatewayEui;
+        rxpk = _rxpk;
+        receivedAt = _receivedAt;
+        score = score(_rxpk.getRssi(), _rxpk.getLsnr());
+    }
+
+    /**
+     * Link quality used to rank the gateways: RSSI plus three times the SNR.
+     * The SNR counts until 10 dB, past which the link has enough margin.
+     */
+    public static double score(int _rssi, double _lsnr) {
+        return _rssi + 3 * Math.min(_lsnr, 10);
+    }
+
+    public long getGatewayEui() {
+        return gatewayEui;
+    }
+
+    /**
+     * @return the rxpk, with the radio metadata of this copy (rssi, lsnr,
+     * tmst, chan, ...)
+     */
+    public Rxpk getRxpk() {
+        return rxpk;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return when the server received this copy
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+}
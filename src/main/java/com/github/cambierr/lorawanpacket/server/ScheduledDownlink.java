@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.Txpk;
+
+/**
+ * A transmission accepted by a {@link DownlinkScheduler}.
+ *
+ * @author cambierr
+ */
+public class ScheduledDownlink {
+
+    private final Gateway gateway;
+    private final Txpk txpk;
+    private final int tmst;
+    private final int airtime;
+    private final long txTime;
+    TimingWheel.Timeout<ScheduledDownlink> timeout;
+
+    ScheduledDownlink(Gateway _gateway, Txpk _txpk, int _tmst, int _airtime, long _txTime) {
+        gateway = _gateway;
+        txpk = _txpk;
+        tmst = _tmst;
+        airtime = _airtime;
+        txTime = _txTime;
+    }
+
+    public Gateway getGateway() {
+        return gateway;
+    }
+
+    public Txpk getTxpk() {
+        return txpk;
+    }
+
+    /**
+     * @return the concentrator counter value of the transmission
+     */
+    public int getTmst() {
+        return tmst;
+    }
+
+    /**
+     * @return the time on air, in microseconds
+     */
+    public int getAirtime() {
+        return airtime;
+    }
+
+    /**
+     * @return when the transmission starts, in server time
+     */
+    public long getTxTime() {
+        return txTime;
+    }
+
+    /**
+     * @return true if both transmissions use the radio of the same gateway at
+     * the same time; counters wrap after 2^32 microseconds
+     */
+    boolean overlaps(ScheduledDownlink _other) {
+        return _other.tmst - tmst < airtime && tmst - _other.tmst < _other.airtime;
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.semtech.PacketRegistry;
+import com.github.cambierr.lorawanpacket.semtech.PacketType;
+import com.github.cambierr.lorawanpacket.semtech.SemtechPacket;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Non-blocking Semtech (GWMP) UDP server: one thread drains a
+ * {@link DatagramChannel} into pooled direct buffers, answers PUSH_DATA and
+ * PULL_DATA with PUSH_ACK/PULL_ACK built from templates where only the token
+ * is patched, decodes every datagram with {@link SemtechPacket#parse} and
+ * passes it to a {@link PacketHandler}. Downlinks (PULL_RESP) are sent with
+ * {@link #send}, from any thread.
+ *
+ * When the registry decodes rxpk data lazily, the data must be read inside
+ * the handler: it refers to the receive buffer.
+ *
+ * @author cambierr
+ */
+public class SemtechServer implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final SocketAddress bindAddress;
+    private final PacketHandler handler;
+    private PacketRegistry registry = PacketRegistry.getDefault();
+    private BufferPool pool;
+    private DatagramHandler datagramHandler;
+    private String name = "semtech-server";
+
+    private final ByteBuffer pushAck = ackTemplate(PacketType.PUSH_ACK);
+    private final ByteBuffer pullAck = ackTemplate(PacketType.PULL_ACK);
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    private volatile long received;
+    private volatile long malformed;
+    private volatile long failed;
+    private volatile long unsent;
+
+    /**
+     * @param _bindAddress the local address to listen on
+     */
+    public SemtechServer(SocketAddress _bindAddress, PacketHandler _handler) {
+        if (_handler == null) {
+            throw new IllegalArgumentException("handler can not be null");
+        }
+        bindAddress = _bindAddress;
+        handler = _handler;
+    }
+
+    public SemtechServer setRegistry(PacketRegistry _registry) {
+        checkNotStarted();
+        registry = _registry;
+        return this;
+    }
+
+    public SemtechServer setBufferPool(BufferPool _pool) {
+        checkNotStarted();
+        pool = _pool;
+        return this;
+    }
+
+    /**
+     * Hands the datagrams to _handler first, once acknowledged; those it does
+     * not take are parsed as usual.
+     */
+    public SemtechServer setDatagramHandler(DatagramHandler _handler) {
+        checkNotStarted();
+        datagramHandler = _handler;
+        return this;
+    }
+
+    /**
+     * @param _name the name of the receive thread
+     */
+    public SemtechServer setName(String _name) {
+        checkNotStarted();
+        name = _name;
+        return this;
+    }
+
+    /**
+     * Binds the socket and starts the receive thread.
+     */
+    public synchronized SemtechServer start() throws IOException {
+        checkNotStarted();
+        if (pool == null) {
+            pool = new BufferPool(16, DEFAULT_BUFFER_SIZE);
+        }
+        channel = open(bindAddress);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        running = true;
+        thread = new Thread(this::loop, name);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Opens and binds the channel; overridden to set socket options before
+     * binding.
+     */
+    protected DatagramChannel open(SocketAddress _bindAddress) throws IOException {
+        return DatagramChannel.open().bind(_bindAddress);
+    }
+
+    /**
+     * Sends a datagram, typically a PULL_RESP, to a gateway. The position of
+     * _datagram is moved to its limit when sent.
+     *
+     * @return false if the socket send buffer was full: the datagram was not
+     * sent, and is counted by {@link #getUnsent()}
+     */
+    public boolean send(ByteBuffer _datagram, SocketAddress _to) throws IOException {
+        if (channel == null) {
+            throw new RuntimeException("server not started");
+        }
+        if (channel.send(_datagram, _to) == 0) {
+            unsent++;
+            return false;
+        }
+        return true;
+    }
+
+    public SocketAddress getLocalAddress() throws IOException {
+        if (channel == null) {
+            throw new RuntimeException("server not started");
+        }
+        return channel.getLocalAddress();
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return the number of datagrams lost to a failing handler or
+     * acknowledgement
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of downlinks and acknowledgements not sent because
+     * the socket send buffer was full
+     */
+    public long getUnsent() {
+        return unsent;
+    }
+
+    /**
+     * @return false once closed, or once the receive thread stopped on an
+     * I/O error, which was reported to {@link PacketHandler#failed}
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        selector.close();
+        channel.close();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                drain();
+            }
+        } catch (ClosedChannelException ex) {
+            // closed while receiving
+        } catch (IOException ex) {
+            if (running) {
+                // the socket is still open until close(), but nothing reads it
+                running = false;
+                fail(null, null, new RuntimeException("receive failed", ex));
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            ByteBuffer bb = pool.acquire();
+            try {
+                SocketAddress from = channel.receive(bb);
+                if (from == null) {
+                    return;
+                }
+                bb.flip();
+                received++;
+                try {
+                    process(bb, from);
+                } catch (IOException | RuntimeException ex) {
+                    // only this datagram is lost
+                    failed++;
+                }
+            } finally {
+                pool.release(bb);
+            }
+        }
+    }
+
+    private void process(ByteBuffer _bb, SocketAddress _from) throws IOException {
+        if (_bb.remaining() >= 12 && _bb.get(0) == 0x02) {
+            byte type = _bb.get(3);
+            if (type == PacketType.PUSH_DATA.getValue()) {
+                acknowledge(pushAck, _bb, _from);
+            } else if (type == PacketType.PULL_DATA.getValue()) {
+                acknowledge(pullAck, _bb, _from);
+            }
+        }
+        try {
+            if (datagramHandler != null && datagramHandler.datagram(_bb, _from)) {
+                return;
+            }
+        } catch (RuntimeException ex) {
+            fail(null, _from, ex);
+            return;
+        }
+        SemtechPacket packet;
+        try {
+            packet = SemtechPacket.parse(_bb, registry);
+        } catch (MalformedPacketException ex) {
+            malformed(_bb, _from, ex);
+            return;
+        } catch (RuntimeException ex) {
+            // decoders not guarding every read, e.g. a truncated FOpts
+            malformed(_bb, _from, new MalformedPacketException(ex));
+            return;
+        }
+        try {
+            handler.handle(packet, _from);
+        } catch (RuntimeException ex) {
+            fail(packet, _from, ex);
+        }
+    }
+
+    private void malformed(ByteBuffer _bb, SocketAddress _from, MalformedPacketException _ex) {
+        malformed++;
+        _bb.rewind();
+        try {
+            handler.malformed(_bb, _from, _ex);
+        } catch (RuntimeException ex) {
+            failed++;
+        }
+    }
+
+    private void fail(SemtechPacket _packet, SocketAddress _from, RuntimeException _ex) {
+        failed++;
+        try {
+            handler.failed(_packet, _from, _ex);
+        } catch (RuntimeException ex) {
+            // nothing more to report to
+        }
+    }
+
+    private void acknowledge(ByteBuffer _template, ByteBuffer _request, SocketAddress _to) throws IOException {
+        _template.put(1, _request.get(1));
+        _template.put(2, _request.get(2));
+        _template.rewind();
+        if (channel.send(_template, _to) == 0) {
+            unsent++;
+        }
+    }
+
+    private static ByteBuffer ackTemplate(PacketType _type) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(4);
+        bb.put(0, (byte) 0x02);
+        bb.put(3, _type.getValue());
+        return bb;
+    }
+
+    private void checkNotStarted() {
+        if (thread != null) {
+            throw new RuntimeException("server already started");
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+
+/**
+ * Source of the sessions sharing a DevAddr, designated by long references
+ * so that sessions may live off-heap, as in a {@link SessionTable}. The
+ * methods taking a reference are only called by the thread validating the
+ * uplinks of its DevAddr.
+ *
+ * @author cambierr
+ */
+public interface SessionStore {
+
+    /**
+     * Writes the references of the sessions using _devAddr into _out.
+     *
+     * @param _devAddr the DevAddr, as read from the wire (little-endian)
+     * @return the number of references written, at most _out.length
+     */
+    int lookup(int _devAddr, long[] _out);
+
+    /**
+     * @return the 32 bits counter matching the 16 bits one of a frame: the
+     * smallest value not below the last accepted counter
+     */
+    int expandfCntUp(long _ref, int _fCnt);
+
+    /**
+     * Records _fCnt as the last uplink counter of the session, unless it was
+     * already used.
+     *
+     * @return false if _fCnt was already used, the frame being a replay
+     */
+    boolean acceptfCntUp(long _ref, int _fCnt);
+
+    /**
+     * @return _crypto, keyed with the NwkSKey of the session
+     */
+    SessionCrypto nwkSKey(long _ref, SessionCrypto _crypto);
+
+    /**
+     * @return _crypto, keyed with the AppSKey of the session
+     */
+    SessionCrypto appSKey(long _ref, SessionCrypto _crypto);
+
+}
@@ -0,0 +1,503 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.DeviceClass;
+import com.github.cambierr.lorawanpacket.lorawan.MType;
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayloadView;
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Device sessions stored off-heap, in 64 bytes records of direct buffers,
+ * keyed by the int DevAddr.
+ *
+ * The table is split in segments of at most 2^20 records, each being an
+ * open addressing table with linear probing; the DevAddr hash selects the
+ * segment and the first slot. Several sessions may share a DevAddr, they
+ * are found by {@link #lookup}. A session is designated by a reference
+ * which stays valid until it is removed: records never move. A removed
+ * record is marked, to be reused by a later insertion, or emptied when it
+ * ends a probe chain; once marked records exceed a quarter of a segment,
+ * or leave an insertion no empty slot, those no probe crosses are emptied
+ * too, so that chains do not grow with session churn.
+ *
+ * Keys never leave the buffers as arrays: {@link #nwkSKey} and
+ * {@link #appSKey} re-key a thread owned {@link SessionCrypto}, to be used
+ * by {@link PhyPayloadView} or set on a DataPayload. Re-keying is paid on
+ * every use rather than caching a context per session: it runs the AES key
+ * schedule and encrypts one block for the CMAC subkeys, without allocating
+ * with the Java engine; the JCE engine also allocates a SecretKeySpec and
+ * runs Cipher.init. Resolving a frame re-keys the NwkSKey context once per
+ * candidate session, and decrypting it the AppSKey context once.
+ *
+ * As a {@link SessionStore}, the table feeds an {@link UplinkPipeline}
+ * directly; the validate stage then owns the records of every DevAddr.
+ *
+ * Insertions and removals are serialized, and run alongside lock-free
+ * lookups: the state and the DevAddr of each slot are kept in one word of an
+ * atomic array, written once the record is complete, so a probe never sees
+ * a partial record. The fields of a session (counters, keys, RX settings)
+ * are not synchronized: they should only be used and changed by the thread
+ * owning its DevAddr (the validate stage of an {@link UplinkPipeline}, or a
+ * {@link DevAddrShards} bucket), and a session must not be removed while
+ * that thread may still use its reference.
+ *
+ * @author cambierr
+ */
+public class SessionTable implements SessionStore {
+
+    public static final int RECORD_SIZE = 64;
+
+    private static final int MAX_SEGMENT_BITS = 20;
+
+    // slot states, in the low bits of the slot words
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int REMOVED = 2;
+
+    private static final byte UPLINK_SEEN = 1;
+
+    // record layout
+    private static final int DEV_ADDR = 0;
+    private static final int FLAGS = 5;
+    private static final int DEVICE_CLASS = 6;
+    private static final int RX1_DR_OFFSET = 7;
+    private static final int FCNT_UP = 8;
+    private static final int FCNT_DOWN = 12;
+    private static final int NWK_SKEY = 16;
+    private static final int APP_SKEY = 32;
+    private static final int RX2_FREQUENCY = 48;
+    private static final int RX2_DATA_RATE = 52;
+    private static final int RX_DELAY = 53;
+    private static final int DEV_EUI = 56;
+
+    private static final DeviceClass[] CLASSES = DeviceClass.values();
+
+    private final ByteBuffer[] segments;
+    private final AtomicLongArray[] states;
+    private final int segmentBits;
+    private final int slotBits;
+    private final int slotMask;
+    private final int[] used;
+    private final int[] removed;
+    private final int[] sweepAt;
+    private final int capacity;
+    private volatile int size;
+
+    /**
+     * @param _capacity largest number of sessions; the table allocates 72
+     * bytes per slot (64 off-heap, 8 on-heap), so from 144 to 288 bytes per
+     * session, as the number of slots is a power of 2 holding at least twice
+     * _capacity: records do not move, so under churn the removed records
+     * probes still cross keep taking slots
+     */
+    public SessionTable(int _capacity) {
+        if (_capacity < 1 || _capacity > 1 << 29) {
+            throw new IllegalArgumentException("invalid capacity");
+        }
+        int slots = Integer.highestOneBit(2 * _capacity);
+        if (slots < 2 * _capacity) {
+            slots <<= 1;
+        }
+        int bits = Integer.numberOfTrailingZeros(slots);
+        slotBits = Math.min(bits, MAX_SEGMENT_BITS);
+        segmentBits = bits - slotBits;
+        slotMask = (1 << slotBits) - 1;
+        capacity = _capacity;
+        segments = new ByteBuffer[1 << segmentBits];
+        states = new AtomicLongArray[segments.length];
+        used = new int[segments.length];
+        removed = new int[segments.length];
+        sweepAt = new int[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(RECORD_SIZE << slotBits).order(ByteOrder.LITTLE_ENDIAN);
+            states[i] = new AtomicLongArray(1 << slotBits);
+            sweepAt[i] = (1 << slotBits) / 4;
+        }
+    }
+
+    /**
+     * Adds a session, with its frame counters at 0, class A and default RX
+     * parameters (zero).
+     *
+     * @param _devAddr the DevAddr, as read from the wire (little-endian)
+     * @return the reference of the session
+     */
+    public synchronized long add(int _devAddr, long _devEui, byte[] _nwkSKey, byte[] _appSKey) {
+        if (_nwkSKey.length != 16 || _appSKey.length != 16) {
+            throw new IllegalArgumentException("keys must be 16 bytes long");
+        }
+        if (size == capacity) {
+            throw new RuntimeException("session table full");
+        }
+        int h = hash(_devAddr);
+        int segment = segment(h);
+        ByteBuffer b = segments[segment];
+        AtomicLongArray words = states[segment];
+        int free = free(segment, h);
+        if (free < 0 && removed[segment] > 0) {
+            // the tombstones took the last empty slots
+            sweep(segment);
+            free = free(segment, h);
+        }
+        if (free < 0) {
+            throw new RuntimeException("session table segment full");
+        }
+        if (state(words.get(free)) == REMOVED) {
+            removed[segment]--;
+        } else {
+            used[segment]++;
+        }
+        int r = free * RECORD_SIZE;
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            b.putLong(r + i, 0);
+        }
+        b.putInt(r + DEV_ADDR, _devAddr);
+        b.putLong(r + DEV_EUI, _devEui);
+        for (int i = 0; i < 16; i++) {
+            b.put(r + NWK_SKEY + i, _nwkSKey[i]);
+            b.put(r + APP_SKEY + i, _appSKey[i]);
+        }
+        // publishes the record to the lookups
+        words.set(free, word(_devAddr, USED));
+        size++;
+        return (long) segment << 32 | free;
+    }
+
+    /**
+     * @return the first removed slot of the probe of _hash, else its empty
+     * slot, or -1 if it is the last one: it is kept to end the probes
+     */
+    private int free(int _segment, int _hash) {
+        AtomicLongArray words = states[_segment];
+        int slot = _hash & slotMask;
+        for (int i = 0; i <= slotMask; i++, slot = (slot + 1) & slotMask) {
+            int state = state(words.get(slot));
+            if (state == REMOVED) {
+                return slot;
+            }
+            if (state == EMPTY) {
+                return used[_segment] == slotMask ? -1 : slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the references of the sessions of _devAddr into _out.
+     *
+     * @return the number of references written, at most _out.length
+     */
+    @Override
+    public int lookup(int _devAddr, long[] _out) {
+        int h = hash(_devAddr);
+        int segment = segment(h);
+        AtomicLongArray words = states[segment];
+        long match = word(_devAddr, USED);
+        int slot = h & slotMask;
+        int count = 0;
+        for (int i = 0; i <= slotMask && count < _out.length; i++, slot = (slot + 1) & slotMask) {
+            long w = words.get(slot);
+            if (w == match) {
+                _out[count++] = (long) segment << 32 | slot;
+            } else if (state(w) == EMPTY) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the reference of the session of the frame whose NwkSKey
+     * matches the MIC, or -1; _nwkSKey is left keyed with it
+     */
+    public long resolve(PhyPayloadView _frame, SessionCrypto _nwkSKey) throws MalformedPacketException {
+        MType type = _frame.getMType();
+        if (type != MType.UNCONF_DATA_UP && type != MType.CONF_DATA_UP) {
+            throw new MalformedPacketException("not an uplink data frame");
+        }
+        int devAddr = _frame.getDevAddr();
+        int h = hash(devAddr);
+        int segment = segment(h);
+        ByteBuffer b = segments[segment];
+        AtomicLongArray words = states[segment];
+        long match = word(devAddr, USED);
+        int slot = h & slotMask;
+        for (int i = 0; i <= slotMask; i++, slot = (slot + 1) & slotMask) {
+            long w = words.get(slot);
+            if (w == match) {
+                long ref = (long) segment << 32 | slot;
+                _nwkSKey.setKey(b, slot * RECORD_SIZE + NWK_SKEY);
+                if (_frame.validateMic(_nwkSKey, expandfCntUp(ref, _frame.getfCnt()))) {
+                    return ref;
+                }
+            } else if (state(w) == EMPTY) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a session as removed; its reference must not be used anymore.
+     */
+    public synchronized void remove(long _ref) {
+        int segment = (int) (_ref >>> 32);
+        int slot = (int) _ref;
+        if (segment < 0 || segment >= segments.length || slot < 0 || slot > slotMask || state(states[segment].get(slot)) != USED) {
+            throw new IllegalArgumentException("no such session");
+        }
+        AtomicLongArray words = states[segment];
+        size--;
+        if (state(words.get((slot + 1) & slotMask)) != EMPTY) {
+            words.set(slot, REMOVED);
+            if (++removed[segment] > sweepAt[segment]) {
+                sweep(segment);
+                // tombstones still needed by probes do not trigger sweeps
+                sweepAt[segment] = Math.max((slotMask + 1) / 4, removed[segment] + (slotMask + 1) / 8);
+            }
+            return;
+        }
+        // no probe goes past an empty slot: the tombstones just before it
+        // are not needed either
+        words.set(slot, EMPTY);
+        used[segment]--;
+        for (slot = (slot - 1) & slotMask; state(words.get(slot)) == REMOVED; slot = (slot - 1) & slotMask) {
+            words.set(slot, EMPTY);
+            used[segment]--;
+            removed[segment]--;
+        }
+    }
+
+    /**
+     * Empties the tombstones of a segment that no probe needs to cross: those
+     * not between a session and the slot its hash starts from. Records do
+     * not move, so references and concurrent lookups are not disturbed.
+     */
+    private void sweep(int _segment) {
+        AtomicLongArray words = states[_segment];
+        int end = 0;
+        while (state(words.get(end)) != EMPTY) {
+            end++;
+        }
+        // walks backwards from an empty slot; need is how far back, in slots
+        // from the current run end, the sessions seen so far probe from
+        int need = -1;
+        int distance = 0;
+        for (int i = 0, slot = (end - 1) & slotMask; i < slotMask; i++, slot = (slot - 1) & slotMask) {
+            long w = words.get(slot);
+            int state = state(w);
+            distance++;
+            if (state == EMPTY) {
+                need = -1;
+                distance = 0;
+            } else if (state == USED) {
+                int home = hash((int) (w >>> 32)) & slotMask;
+                need = Math.max(need, distance + ((slot - home) & slotMask));
+            } else if (distance > need) {
+                words.set(slot, EMPTY);
+                used[_segment]--;
+                removed[_segment]--;
+                need = -1;
+                distance = 0;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDevAddr(long _ref) {
+        return buffer(_ref).getInt(offset(_ref) + DEV_ADDR);
+    }
+
+    public long getDevEui(long _ref) {
+        return buffer(_ref).getLong(offset(_ref) + DEV_EUI);
+    }
+
+    /**
+     * @return _crypto, keyed with the NwkSKey of the session
+     */
+    @Override
+    public SessionCrypto nwkSKey(long _ref, SessionCrypto _crypto) {
+        return _crypto.setKey(buffer(_ref), offset(_ref) + NWK_SKEY);
+    }
+
+    /**
+     * @return _crypto, keyed with the AppSKey of the session
+     */
+    @Override
+    public SessionCrypto appSKey(long _ref, SessionCrypto _crypto) {
+        return _crypto.setKey(buffer(_ref), offset(_ref) + APP_SKEY);
+    }
+
+    public SessionTable setKeys(long _ref, byte[] _nwkSKey, byte[] _appSKey) {
+        if (_nwkSKey.length != 16 || _appSKey.length != 16) {
+            throw new IllegalArgumentException("keys must be 16 bytes long");
+        }
+        ByteBuffer b = buffer(_ref);
+        int r = offset(_ref);
+        for (int i = 0; i < 16; i++) {
+            b.put(r + NWK_SKEY + i, _nwkSKey[i]);
+            b.put(r + APP_SKEY + i, _appSKey[i]);
+        }
+        return this;
+    }
+
+    /**
+     * @return the 32 bits counter of the last accepted uplink
+     */
+    public int getfCntUp(long _ref) {
+        return buffer(_ref).getInt(offset(_ref) + FCNT_UP);
+    }
+
+    /**
+     * @return the 32 bits counter matching the 16 bits one of a frame: the
+     * smallest value not below the last accepted counter
+     */
+    @Override
+    public int expandfCntUp(long _ref, int _fCnt) {
+        ByteBuffer b = buffer(_ref);
+        int r = offset(_ref);
+        return FrameCounter.expand(b.getInt(r + FCNT_UP), (b.get(r + FLAGS) & UPLINK_SEEN) != 0, _fCnt);
+    }
+
+    /**
+     * @return false if _fCnt was already used, the frame being a replay
+     */
+    @Override
+    public boolean acceptfCntUp(long _ref, int _fCnt) {
+        ByteBuffer b = buffer(_ref);
+        int r = offset(_ref);
+        byte flags = b.get(r + FLAGS);
+        if (!FrameCounter.accepts(b.getInt(r + FCNT_UP), (flags & UPLINK_SEEN) != 0, _fCnt)) {
+            return false;
+        }
+        b.putInt(r + FCNT_UP, _fCnt);
+        b.put(r + FLAGS, (byte) (flags | UPLINK_SEEN));
+        return true;
+    }
+
+    public int getfCntDown(long _ref) {
+        return buffer(_ref).getInt(offset(_ref) + FCNT_DOWN);
+    }
+
+    public SessionTable setfCntDown(long _ref, int _fCnt) {
+        buffer(_ref).putInt(offset(_ref) + FCNT_DOWN, _fCnt);
+        return this;
+    }
+
+    /**
+     * @return the counter to use for the next downlink, incremented
+     */
+    public int nextfCntDown(long _ref) {
+        ByteBuffer b = buffer(_ref);
+        int r = offset(_ref) + FCNT_DOWN;
+        int f = b.getInt(r);
+        b.putInt(r, f + 1);
+        return f;
+    }
+
+    public DeviceClass getDeviceClass(long _ref) {
+        return CLASSES[buffer(_ref).get(offset(_ref) + DEVICE_CLASS)];
+    }
+
+    public SessionTable setDeviceClass(long _ref, DeviceClass _class) {
+        buffer(_ref).put(offset(_ref) + DEVICE_CLASS, (byte) _class.ordinal());
+        return this;
+    }
+
+    public int getRx1DrOffset(long _ref) {
+        return buffer(_ref).get(offset(_ref) + RX1_DR_OFFSET);
+    }
+
+    public SessionTable setRx1DrOffset(long _ref, int _offset) {
+        buffer(_ref).put(offset(_ref) + RX1_DR_OFFSET, (byte) _offset);
+        return this;
+    }
+
+    public int getRx2DataRate(long _ref) {
+        return buffer(_ref).get(offset(_ref) + RX2_DATA_RATE);
+    }
+
+    public SessionTable setRx2DataRate(long _ref, int _dataRate) {
+        buffer(_ref).put(offset(_ref) + RX2_DATA_RATE, (byte) _dataRate);
+        return this;
+    }
+
+    /**
+     * @return the RX2 frequency, in Hz
+     */
+    public int getRx2Frequency(long _ref) {
+        return buffer(_ref).getInt(offset(_ref) + RX2_FREQUENCY);
+    }
+
+    public SessionTable setRx2Frequency(long _ref, int _frequency) {
+        buffer(_ref).putInt(offset(_ref) + RX2_FREQUENCY, _frequency);
+        return this;
+    }
+
+    /**
+     * @return the RX1 delay, in seconds
+     */
+    public int getRxDelay(long _ref) {
+        return buffer(_ref).get(offset(_ref) + RX_DELAY);
+    }
+
+    public SessionTable setRxDelay(long _ref, int _delay) {
+        buffer(_ref).put(offset(_ref) + RX_DELAY, (byte) _delay);
+        return this;
+    }
+
+    private static long word(int _devAddr, int _state) {
+        return (long) _devAddr << 32 | _state;
+    }
+
+    private static int state(long _word) {
+        return (int) _word;
+    }
+
+    private int hash(int _devAddr) {
+        int h = _devAddr * 0x9e3779b9;
+        return h ^ (h >>> 15);
+    }
+
+    private int segment(int _hash) {
+        return segmentBits == 0 ? 0 : _hash >>> (32 - segmentBits);
+    }
+
+    private ByteBuffer buffer(long _ref) {
+        return segments[(int) (_ref >>> 32)];
+    }
+
+    private static int offset(long _ref) {
+        return (int) _ref * RECORD_SIZE;
+    }
+
+}
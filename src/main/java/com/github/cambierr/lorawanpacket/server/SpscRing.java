@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded single-producer/single-consumer ring of preallocated, reusable
+ * events. The producer {@link #claim claims} the next free slot, fills it and
+ * {@link #publish publishes} it; the consumer {@link #drain drains} batches
+ * and the slots go back to the producer. No lock, no allocation: a full ring
+ * is reported to the producer ({@link #claim} returns null), which decides
+ * whether to wait or drop.
+ *
+ * @param <T> the type of the events
+ * @author cambierr
+ */
+public final class SpscRing<T> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // producer side
+    private long produced;
+    private long knownHead;
+
+    // consumer side
+    private long consumed;
+    private long knownTail;
+
+    /**
+     * @param _capacity number of slots, rounded up to a power of 2
+     * @param _factory creates the events, once per slot
+     */
+    public SpscRing(int _capacity, Supplier<T> _factory) {
+        if (_capacity < 1 || _capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity");
+        }
+        int n = Integer.highestOneBit(_capacity);
+        if (n < _capacity) {
+            n <<= 1;
+        }
+        slots = new Object[n];
+        mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            slots[i] = _factory.get();
+        }
+    }
+
+    /**
+     * Producer only.
+     *
+     * @return the next slot to fill, or null if the ring is full; the same
+     * slot is returned until it is published
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        if (produced - knownHead >= slots.length) {
+            knownHead = head.get();
+            if (produced - knownHead >= slots.length) {
+                return null;
+            }
+        }
+        return (T) slots[(int) (produced & mask)];
+    }
+
+    /**
+     * Producer only: hands the claimed slot to the consumer.
+     */
+    public void publish() {
+        tail.lazySet(++produced);
+    }
+
+    /**
+     * Consumer only: passes up to _max published events to _consumer, then
+     * gives their slots back. Events must not be kept after the call.
+     *
+     * @return the number of consumed events
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super T> _consumer, int _max) {
+        if (consumed == knownTail) {
+            knownTail = tail.get();
+        }
+        int n = (int) Math.min(knownTail - consumed, _max);
+        for (int i = 0; i < n; i++) {
+            _consumer.accept((T) slots[(int) ((consumed + i) & mask)]);
+        }
+        consumed += n;
+        if (n > 0) {
+            head.lazySet(consumed);
+        }
+        return n;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return an estimate of the number of published events, from any thread
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+}
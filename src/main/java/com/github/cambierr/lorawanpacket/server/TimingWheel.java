@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: timeouts are dropped into one of a fixed number of
+ * buckets by deadline, and {@link #advance} only visits the buckets of the
+ * ticks elapsed since the previous call, instead of one timer per entry.
+ * Timeouts fire at most one tick late, never early. Deadlines farther than
+ * one rotation stay in their bucket until due.
+ *
+ * The wheel has no thread: its owner calls {@link #advance} regularly, and
+ * must be the only thread using it.
+ *
+ * @param <T> the type of the scheduled items
+ * @author cambierr
+ */
+public class TimingWheel<T> {
+
+    private final long tickDuration;
+    private final long start;
+    private final Timeout<T>[] buckets;
+    private final int mask;
+    private long lastTick;
+    private int size;
+
+    /**
+     * @param _tickDuration resolution, in the unit of the deadlines
+     * @param _wheelSize number of buckets, rounded up to a power of 2
+     * @param _start current time
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long _tickDuration, int _wheelSize, long _start) {
+        if (_tickDuration < 1 || _wheelSize < 1 || _wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("invalid wheel size");
+        }
+        int n = Integer.highestOneBit(_wheelSize);
+        if (n < _wheelSize) {
+            n <<= 1;
+        }
+        tickDuration = _tickDuration;
+        start = _start;
+        buckets = (Timeout<T>[]) new Timeout<?>[n];
+        mask = n - 1;
+        lastTick = -1;
+    }
+
+    /**
+     * @return a handle to cancel the timeout
+     */
+    public Timeout<T> schedule(T _item, long _deadline) {
+        Timeout<T> t = new Timeout<>(_item, _deadline);
+        long tick = Math.max((_deadline - start) / tickDuration, lastTick + 1);
+        t.bucket = (int) (tick & mask);
+        t.next = buckets[t.bucket];
+        if (t.next != null) {
+            t.next.prev = t;
+        }
+        buckets[t.bucket] = t;
+        size++;
+        return t;
+    }
+
+    /**
+     * @return false if the timeout already fired or was cancelled
+     */
+    public boolean cancel(Timeout<T> _timeout) {
+        if (_timeout.bucket < 0) {
+            return false;
+        }
+        unlink(_timeout);
+        return true;
+    }
+
+    /**
+     * Fires the timeouts due at _now, in no particular order. They are all
+     * removed before the first callback, which may therefore schedule or
+     * cancel any timeout.
+     *
+     * @return the number of fired timeouts
+     */
+    public int advance(long _now, Consumer<? super T> _expired) {
+        long tick = (_now - start) / tickDuration - 1;
+        if (tick <= lastTick) {
+            return 0;
+        }
+        long from = Math.max(lastTick + 1, tick - mask);
+        lastTick = tick;
+        Timeout<T> due = null;
+        for (long k = from; k <= tick; k++) {
+            Timeout<T> t = buckets[(int) (k & mask)];
+            while (t != null) {
+                Timeout<T> next = t.next;
+                if (t.deadline <= _now) {
+                    unlink(t);
+                    // chained through next, no longer used by the wheel
+                    t.next = due;
+                    due = t;
+                }
+                t = next;
+            }
+        }
+        int fired = 0;
+        while (due != null) {
+            Timeout<T> t = due;
+            due = t.next;
+            t.next = null;
+            fired++;
+            _expired.accept(t.item);
+        }
+        return fired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void unlink(Timeout<T> _t) {
+        if (_t.prev != null) {
+            _t.prev.next = _t.next;
+        } else {
+            buckets[_t.bucket] = _t.next;
+        }
+        if (_t.next != null) {
+            _t.next.prev = _t.prev;
+        }
+        _t.prev = null;
+        _t.next = null;
+        _t.bucket = -1;
+        size--;
+    }
+
+    /**
+     * Scheduled item.
+     *
+     * @param <T> the type of the item
+     */
+    public static final class Timeout<T> {
+
+        private final T item;
+        private final long deadline;
+        private int bucket = -1;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T _item, long _deadline) {
+            item = _item;
+            deadline = _deadline;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            return bucket >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An uplink frame with every gateway reception of it, as produced by an
+ * {@link UplinkDeduplicator}.
+ *
+ * @author cambierr
+ */
+public class Uplink {
+
+    private final byte[] phyPayload;
+    private final long hash;
+    private final long firstSeen;
+    private final List<Reception> receptions = new ArrayList<>(4);
+    private Reception best;
+    private Reception second;
+    private boolean emitted;
+    private int late;
+    Uplink nextSameHash;
+
+    Uplink(byte[] _phyPayload, long _hash, long _firstSeen) {
+        phyPayload = _phyPayload;
+        hash = _hash;
+        firstSeen = _firstSeen;
+    }
+
+    /**
+     * @return the raw PHYPayload, shared: it must not be modified
+     */
+    public byte[] getPhyPayload() {
+        return phyPayload;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public List<Reception> getReceptions() {
+        return Collections.unmodifiableList(receptions);
+    }
+
+    public int getReceptionCount() {
+        return receptions.size();
+    }
+
+    /**
+     * @return the reception of index _index, in arrival order
+     */
+    public Reception getReception(int _index) {
+        return receptions.get(_index);
+    }
+
+    /**
+     * @return the reception with the highest {@link Reception#getScore()}
+     */
+    public Reception getBest() {
+        return best;
+    }
+
+    /**
+     * @return the second best reception from another gateway, or null
+     */
+    public Reception getSecond() {
+        return second;
+    }
+
+    /**
+     * @return the number of copies received after the uplink was emitted,
+     * which were dropped
+     */
+    public int getLate() {
+        return late;
+    }
+
+    void add(Reception _reception) {
+        if (emitted) {
+            late++;
+        } else {
+            receptions.add(_reception);
+            rank(_reception);
+        }
+    }
+
+    private void rank(Reception _r) {
+        if (best == null || _r.getScore() > best.getScore()) {
+            if (best != null && best.getGatewayEui() != _r.getGatewayEui()) {
+                second = best;
+            }
+            best = _r;
+        } else if (_r.getGatewayEui() != best.getGatewayEui() && (second == null || _r.getScore() > second.getScore())) {
+            second = _r;
+        }
+    }
+
+    boolean isEmitted() {
+        return emitted;
+    }
+
+    void emitted() {
+        emitted = true;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.semtech.PushData;
+import com.github.cambierr.lorawanpacket.semtech.Rxpk;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Merges the copies of a frame received by several gateways into one
+ * {@link Uplink}. Copies are matched by a 64 bits hash of the raw
+ * PHYPayload (confirmed by comparing the bytes), looked up in an open
+ * addressing table of the uplinks by hash; the uplink is emitted once
+ * its collection window is over, and then remembered for another window so
+ * that late copies are dropped instead of producing a second uplink. Windows
+ * are tracked by a {@link TimingWheel}.
+ *
+ * Not thread safe: feed it from a single thread, which also calls
+ * {@link #advance}. The data of each rxpk is decoded into a scratch buffer,
+ * and only copied for the first reception of a frame: with a lazy
+ * {@link com.github.cambierr.lorawanpacket.semtech.PacketRegistry}, the
+ * rxpks of the receptions still refer to their datagram, so the frame
+ * should be read from {@link Uplink#getPhyPayload()}.
+ *
+ * @author cambierr
+ */
+public class UplinkDeduplicator {
+
+    private final long window;
+    private final Consumer<Uplink> sink;
+    private final TimingWheel<Uplink> wheel;
+    private final byte[] scratch = new byte[256];
+    // heads of the same hash chains, by hash
+    private Uplink[] table = new Uplink[64];
+    private int chains;
+    private final Consumer<Uplink> expiry = this::expired;
+
+    private long duplicates;
+    private long emitted;
+
+    /**
+     * @param _window collection window, in the unit of the timestamps given
+     * to the other methods (typically milliseconds)
+     * @param _now current time
+     * @param _sink receives the merged uplinks, from {@link #advance}
+     */
+    public UplinkDeduplicator(long _window, long _now, Consumer<Uplink> _sink) {
+        if (_window < 1) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        window = _window;
+        sink = _sink;
+        wheel = new TimingWheel<>(Math.max(1, _window / 8), 64, _now);
+    }
+
+    /**
+     * Adds every rxpk of a PUSH_DATA, except those with a failed CRC.
+     *
+     * @return the number of rxpks that were copies of a pending uplink
+     */
+    public int add(PushData _push, long _now) throws MalformedPacketException {
+        long gateway = _push.getGatewayEuiLong();
+        int copies = 0;
+        for (Rxpk rxpk : _push.getRxpks()) {
+            if (rxpk.getStat() == -1) {
+                continue;
+            }
+            if (add(gateway, rxpk, _now).getReceptions().size() > 1) {
+                copies++;
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * @return the uplink the reception was merged into
+     */
+    public Uplink add(long _gatewayEui, Rxpk _rxpk, long _now) throws MalformedPacketException {
+        int length = _rxpk.getRawData(scratch, 0);
+        long hash = hash(scratch, length);
+        int slot = find(hash);
+        Uplink first = table[slot];
+        Uplink u = first;
+        while (u != null && !same(u.getPhyPayload(), length)) {
+            u = u.nextSameHash;
+        }
+        if (u == null) {
+            u = new Uplink(Arrays.copyOf(scratch, length), hash, _now);
+            u.nextSameHash = first;
+            table[slot] = u;
+            if (first == null && ++chains * 2 > table.length) {
+                resize(table.length * 2);
+            }
+            wheel.schedule(u, _now + window);
+        } else {
+            duplicates++;
+        }
+        u.add(new Reception(_gatewayEui, _rxpk, _now));
+        return u;
+    }
+
+    /**
+     * Emits the uplinks whose window is over and forgets the old ones.
+     *
+     * @return the number of processed timeouts
+     */
+    public int advance(long _now) {
+        return wheel.advance(_now, expiry);
+    }
+
+    /**
+     * @return the number of uplinks being collected or remembered
+     */
+    public int size() {
+        return wheel.size();
+    }
+
+    /**
+     * @return the number of copies merged into an uplink, late ones included
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getEmitted() {
+        return emitted;
+    }
+
+    private void expired(Uplink _u) {
+        if (!_u.isEmitted()) {
+            _u.emitted();
+            emitted++;
+            wheel.schedule(_u, _u.getFirstSeen() + 2 * window);
+            sink.accept(_u);
+            return;
+        }
+        int slot = find(_u.getHash());
+        Uplink head = table[slot];
+        if (head == _u) {
+            if (_u.nextSameHash == null) {
+                deleteAt(slot);
+                chains--;
+            } else {
+                table[slot] = _u.nextSameHash;
+            }
+            return;
+        }
+        for (Uplink u = head; u != null; u = u.nextSameHash) {
+            if (u.nextSameHash == _u) {
+                u.nextSameHash = _u.nextSameHash;
+                return;
+            }
+        }
+    }
+
+    private boolean same(byte[] _raw, int _length) {
+        if (_raw.length != _length) {
+            return false;
+        }
+        for (int i = 0; i < _length; i++) {
+            if (_raw[i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slot of the chain of _hash, or the empty slot ending its
+     * probe sequence
+     */
+    private int find(long _hash) {
+        int mask = table.length - 1;
+        int i = index(_hash, mask);
+        while (table[i] != null && table[i].getHash() != _hash) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Backward shift deletion, as in {@link InFlightDownlinks}.
+     */
+    private void deleteAt(int _slot) {
+        int mask = table.length - 1;
+        int hole = _slot;
+        for (int i = (hole + 1) & mask; table[i] != null; i = (i + 1) & mask) {
+            int home = index(table[i].getHash(), mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = null;
+    }
+
+    private void resize(int _capacity) {
+        Uplink[] old = table;
+        table = new Uplink[_capacity];
+        for (Uplink u : old) {
+            if (u != null) {
+                table[find(u.getHash())] = u;
+            }
+        }
+    }
+
+    private static int index(long _hash, int _mask) {
+        long h = _hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    private static long hash(byte[] _raw, int _length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < _length; i++) {
+            h ^= _raw[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+}
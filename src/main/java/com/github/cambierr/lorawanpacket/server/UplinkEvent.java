@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayloadView;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable slot carrying a deduplicated uplink through an
+ * {@link UplinkPipeline}. It is only valid while passed to the sink.
+ *
+ * @author cambierr
+ */
+public class UplinkEvent {
+
+    public static enum Status {
+
+        OK,
+        MALFORMED,
+        UNKNOWN_SESSION,
+        REPLAY
+    }
+
+    private final byte[] frame = new byte[256];
+    private final ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+    private final PhyPayloadView view = new PhyPayloadView();
+    private int frameLength;
+    private Uplink uplink;
+    private long session = -1;
+    private int fCnt;
+    private Status status;
+
+    /**
+     * @return the receptions of the frame
+     */
+    public Uplink getUplink() {
+        return uplink;
+    }
+
+    /**
+     * @return the frame, with its FRMPayload decrypted when the status is OK
+     */
+    public PhyPayloadView getFrame() {
+        return view;
+    }
+
+    /**
+     * @return the reference, in the {@link SessionStore}, of the session the
+     * MIC matched, or -1
+     */
+    public long getSession() {
+        return session;
+    }
+
+    /**
+     * @return the 32 bits frame counter, when a session matched
+     */
+    public int getfCnt() {
+        return fCnt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    void set(Uplink _uplink) {
+        uplink = _uplink;
+        session = -1;
+        fCnt = 0;
+        byte[] raw = _uplink.getPhyPayload();
+        frameLength = Math.min(raw.length, frame.length);
+        System.arraycopy(raw, 0, frame, 0, frameLength);
+        try {
+            view.wrap(frameBuffer, 0, frameLength);
+            status = raw.length > frame.length ? Status.MALFORMED : Status.OK;
+        } catch (MalformedPacketException ex) {
+            status = Status.MALFORMED;
+        }
+    }
+
+    void set(long _session, int _fCnt, Status _status) {
+        session = _session;
+        fCnt = _fCnt;
+        status = _status;
+    }
+
+    void copy(UplinkEvent _other) {
+        uplink = _other.uplink;
+        session = _other.session;
+        fCnt = _other.fCnt;
+        status = _other.status;
+        frameLength = _other.frameLength;
+        System.arraycopy(_other.frame, 0, frame, 0, frameLength);
+        try {
+            view.wrap(frameBuffer, 0, frameLength);
+        } catch (MalformedPacketException ex) {
+            status = Status.MALFORMED;
+        }
+    }
+
+}
@@ -0,0 +1,368 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MType;
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayloadView;
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+import com.github.cambierr.lorawanpacket.semtech.PacketRegistry;
+import com.github.cambierr.lorawanpacket.semtech.PacketType;
+import com.github.cambierr.lorawanpacket.semtech.PushData;
+import com.github.cambierr.lorawanpacket.semtech.SemtechPacket;
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Uplink engine made of three threads linked by {@link SpscRing}s of
+ * preallocated events:
+ * <ol>
+ * <li>parse and deduplicate: PUSH_DATA datagrams are parsed and their rxpks
+ * merged by an {@link UplinkDeduplicator};</li>
+ * <li>validate: the sessions using the DevAddr are looked up in a
+ * {@link SessionStore}, the one whose NwkSKey matches the MIC is kept, the
+ * frame counter is checked and the FRMPayload decrypted in place;</li>
+ * <li>sink: the resulting {@link UplinkEvent}s are passed to a user
+ * consumer.</li>
+ * </ol>
+ * Session lookup, MIC and decryption share a stage because the sessions of
+ * the store are designated by references, and the validate thread keys its
+ * own two {@link SessionCrypto} contexts with them, per frame; a
+ * {@link SessionTable} can be used as the store as is.
+ *
+ * Datagrams enter through {@link #datagram}, from a single thread (the
+ * receive thread of a {@link SemtechServer}). When the first ring is full,
+ * datagrams are dropped and counted; the internal stages wait for space,
+ * so that a slow sink pushes back up to the entry.
+ *
+ * The PUSH_DATA taken by the pipeline never reach the PacketHandler of the
+ * server: give the {@link GatewayRegistry} to {@link #setGatewayRegistry}
+ * for the parse stage to record them, as the handler would.
+ *
+ * @author cambierr
+ */
+public class UplinkPipeline implements DatagramHandler, Closeable {
+
+    private static final int BATCH = 64;
+
+    private final SessionStore store;
+    private final Consumer<UplinkEvent> sink;
+    private final SpscRing<Datagram> datagrams;
+    private final SpscRing<UplinkEvent> uplinks;
+    private final SpscRing<UplinkEvent> validated;
+    private final UplinkDeduplicator deduplicator;
+    private PacketRegistry registry = PacketRegistry.getDefault();
+    private GatewayRegistry gateways;
+    private final long[] candidates;
+    private final SessionCrypto nwkSKey = new SessionCrypto(new byte[16]);
+    private final SessionCrypto appSKey = new SessionCrypto(new byte[16]);
+
+    private final Consumer<Datagram> parseStage = this::parse;
+    private final Consumer<UplinkEvent> validateStage = this::validate;
+    private final Consumer<UplinkEvent> sinkStage = this::deliver;
+    private Consumer<RuntimeException> errorHandler;
+
+    private Thread[] threads;
+    private volatile boolean running;
+    private volatile long dropped;
+    private volatile long malformed;
+    private volatile long failed;
+
+    /**
+     * @param _ringSize number of events of each ring
+     * @param _datagramSize largest accepted datagram
+     * @param _dedupWindow deduplication window, in milliseconds
+     * @param _maxCandidates largest number of sessions sharing a DevAddr
+     */
+    public UplinkPipeline(SessionStore _store, Consumer<UplinkEvent> _sink, int _ringSize, int _datagramSize, long _dedupWindow, int _maxCandidates) {
+        store = _store;
+        sink = _sink;
+        datagrams = new SpscRing<>(_ringSize, () -> new Datagram(_datagramSize));
+        uplinks = new SpscRing<>(_ringSize, UplinkEvent::new);
+        validated = new SpscRing<>(_ringSize, UplinkEvent::new);
+        deduplicator = new UplinkDeduplicator(_dedupWindow, System.currentTimeMillis(), this::deduplicated);
+        candidates = new long[_maxCandidates];
+    }
+
+    public UplinkPipeline setRegistry(PacketRegistry _registry) {
+        if (running) {
+            throw new RuntimeException("pipeline already started");
+        }
+        registry = _registry;
+        return this;
+    }
+
+    /**
+     * @param _gateways updated with every parsed PUSH_DATA, so that gateways
+     * only pushing uplinks are known to the registry
+     */
+    public UplinkPipeline setGatewayRegistry(GatewayRegistry _gateways) {
+        if (running) {
+            throw new RuntimeException("pipeline already started");
+        }
+        gateways = _gateways;
+        return this;
+    }
+
+    /**
+     * @param _handler receives the exceptions thrown while handling an
+     * event, by the session store or the sink; the event is dropped and the
+     * stage goes on
+     */
+    public UplinkPipeline setErrorHandler(Consumer<RuntimeException> _handler) {
+        if (running) {
+            throw new RuntimeException("pipeline already started");
+        }
+        errorHandler = _handler;
+        return this;
+    }
+
+    public synchronized UplinkPipeline start() {
+        if (running) {
+            throw new RuntimeException("pipeline already started");
+        }
+        running = true;
+        threads = new Thread[]{
+            new Thread(this::parseLoop, "uplink-parse"),
+            new Thread(this::validateLoop, "uplink-validate"),
+            new Thread(this::sinkLoop, "uplink-sink")
+        };
+        for (Thread t : threads) {
+            t.start();
+        }
+        return this;
+    }
+
+    /**
+     * Takes the PUSH_DATA datagrams, copied into the first ring; other
+     * datagrams are left to the server.
+     */
+    @Override
+    public boolean datagram(ByteBuffer _raw, SocketAddress _from) {
+        if (_raw.remaining() < 4 || _raw.get(_raw.position() + 3) != PacketType.PUSH_DATA.getValue()) {
+            return false;
+        }
+        Datagram slot = datagrams.claim();
+        if (slot == null || slot.buffer.capacity() < _raw.remaining()) {
+            dropped++;
+            return true;
+        }
+        slot.buffer.clear();
+        slot.buffer.put(_raw.duplicate());
+        slot.buffer.flip();
+        slot.receivedAt = System.currentTimeMillis();
+        slot.from = _from;
+        datagrams.publish();
+        return true;
+    }
+
+    /**
+     * @return the number of datagrams dropped because the pipeline was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return the number of events dropped because the session store or the
+     * sink threw
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread t : threads) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void parseLoop() {
+        int idle = 0;
+        while (running) {
+            int n = datagrams.drain(parseStage, BATCH);
+            n += deduplicator.advance(System.currentTimeMillis());
+            idle = n > 0 ? 0 : idle(idle);
+        }
+    }
+
+    private void validateLoop() {
+        int idle = 0;
+        while (running) {
+            idle = uplinks.drain(validateStage, BATCH) > 0 ? 0 : idle(idle);
+        }
+    }
+
+    private void sinkLoop() {
+        int idle = 0;
+        while (running) {
+            idle = validated.drain(sinkStage, BATCH) > 0 ? 0 : idle(idle);
+        }
+    }
+
+    private void parse(Datagram _d) {
+        try {
+            SemtechPacket packet = SemtechPacket.parse(_d.buffer, registry);
+            if (packet instanceof PushData) {
+                if (gateways != null) {
+                    gateways.update(packet, _d.from, _d.receivedAt);
+                }
+                deduplicator.add((PushData) packet, _d.receivedAt);
+            }
+        } catch (MalformedPacketException | RuntimeException ex) {
+            // decoders do not guard every read, e.g. a truncated FOpts
+            malformed++;
+        }
+    }
+
+    private void deduplicated(Uplink _uplink) {
+        UplinkEvent e = claim(uplinks);
+        if (e == null) {
+            return;
+        }
+        e.set(_uplink);
+        uplinks.publish();
+    }
+
+    private void validate(UplinkEvent _e) {
+        if (_e.getStatus() == UplinkEvent.Status.OK) {
+            try {
+                check(_e);
+            } catch (RuntimeException ex) {
+                fail(ex);
+                return;
+            }
+        }
+        UplinkEvent out = claim(validated);
+        if (out == null) {
+            return;
+        }
+        out.copy(_e);
+        validated.publish();
+    }
+
+    private void deliver(UplinkEvent _e) {
+        try {
+            sink.accept(_e);
+        } catch (RuntimeException ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(RuntimeException _ex) {
+        failed++;
+        if (errorHandler != null) {
+            try {
+                errorHandler.accept(_ex);
+            } catch (RuntimeException ex) {
+                // nothing more to report to
+            }
+        }
+    }
+
+    private void check(UplinkEvent _e) {
+        PhyPayloadView frame = _e.getFrame();
+        try {
+            MType type = frame.getMType();
+            if (type != MType.UNCONF_DATA_UP && type != MType.CONF_DATA_UP) {
+                _e.set(-1, 0, UplinkEvent.Status.MALFORMED);
+                return;
+            }
+            int count = store.lookup(frame.getDevAddr(), candidates);
+            for (int i = 0; i < count; i++) {
+                long s = candidates[i];
+                int fCnt = store.expandfCntUp(s, frame.getfCnt());
+                if (frame.validateMic(store.nwkSKey(s, nwkSKey), fCnt)) {
+                    if (!store.acceptfCntUp(s, fCnt)) {
+                        _e.set(s, fCnt, UplinkEvent.Status.REPLAY);
+                        return;
+                    }
+                    if (frame.hasfPort()) {
+                        frame.cipherPayload(frame.getfPort() == 0 ? nwkSKey : store.appSKey(s, appSKey), fCnt);
+                    }
+                    _e.set(s, fCnt, UplinkEvent.Status.OK);
+                    return;
+                }
+            }
+            _e.set(-1, 0, UplinkEvent.Status.UNKNOWN_SESSION);
+        } catch (MalformedPacketException ex) {
+            _e.set(-1, 0, UplinkEvent.Status.MALFORMED);
+        }
+    }
+
+    /**
+     * Waits for a free slot: a full downstream ring slows this stage down.
+     *
+     * @return null if the pipeline was closed meanwhile
+     */
+    private <T> T claim(SpscRing<T> _ring) {
+        T slot;
+        int idle = 0;
+        while ((slot = _ring.claim()) == null) {
+            if (!running) {
+                return null;
+            }
+            idle = idle(idle);
+        }
+        return slot;
+    }
+
+    private static int idle(int _rounds) {
+        if (_rounds < 100) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50000);
+        }
+        return _rounds + 1;
+    }
+
+    private static final class Datagram {
+
+        private final ByteBuffer buffer;
+        private long receivedAt;
+        private SocketAddress from;
+
+        private Datagram(int _size) {
+            buffer = ByteBuffer.allocate(_size);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket;
+
+import com.github.cambierr.lorawanpacket.lorawan.AesEngine;
+import com.github.cambierr.lorawanpacket.lorawan.Direction;
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the AES engines on LoRaWAN-sized work: the MIC and the payload
+ * keystream of a 2 blocks uplink. Run it with the JVM flags of the target
+ * deployment, the result depends on the hardware and on AES intrinsics.
+ *
+ * @author cambierr
+ */
+public class AesBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 2000000;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        byte[] key = new byte[16];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (i * 17);
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (AesEngine engine : AesEngine.values()) {
+                SessionCrypto crypto = new SessionCrypto(key, engine);
+                ByteBuffer frame = ByteBuffer.allocate(30);
+                run(crypto, frame, WARMUP);
+                long start = System.nanoTime();
+                int sink = run(crypto, frame, ITERATIONS);
+                long elapsed = System.nanoTime() - start;
+                if (pass == 1) {
+                    System.out.println(engine + ": " + (elapsed / ITERATIONS) + " ns/frame (" + sink + ")");
+                }
+            }
+        }
+    }
+
+    private static int run(SessionCrypto _crypto, ByteBuffer _frame, int _iterations) {
+        int sink = 0;
+        for (int i = 0; i < _iterations; i++) {
+            sink ^= _crypto.computeDataMic(Direction.UP, 0x01020304, i, _frame, 0, _frame.capacity());
+            _crypto.cipherPayload(Direction.UP, 0x01020304, i, _frame, 9, 17);
+        }
+        return sink;
+    }
+
+}
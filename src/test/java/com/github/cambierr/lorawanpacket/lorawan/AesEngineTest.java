@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+
+/**
+ * Known answer tests of the AES engines: FIPS-197 for the block cipher,
+ * RFC 4493 for the CMAC built on it.
+ *
+ * @author cambierr
+ */
+public class AesEngineTest {
+
+    private static final byte[] RFC4493_KEY = hex("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] RFC4493_MSG = hex("6bc1bee22e409f96e93d7e117393172a"
+            + "ae2d8a571e03ac9c9eb76fac45af8e51"
+            + "30c81c46a35ce411e5fbc1191a0a52ef"
+            + "f69f2445df4f9b17ad2b417be66c3710");
+
+    static byte[] hex(String _hex) {
+        byte[] b = new byte[_hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(_hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+
+    @Test
+    public void fips197() {
+        for (AesEngine engine : AesEngine.values()) {
+            BlockCipher cipher = engine.create();
+            cipher.init(hex("000102030405060708090a0b0c0d0e0f"));
+            byte[] out = new byte[16];
+            cipher.encryptBlock(hex("00112233445566778899aabbccddeeff"), 0, out, 0);
+            assertArrayEquals(engine.name(), hex("69c4e0d86a7b0430d8cdb78070b4c55a"), out);
+
+            cipher.init(RFC4493_KEY);
+            cipher.encryptBlock(new byte[16], 0, out, 0);
+            assertArrayEquals(engine.name(), hex("7df76b0c1ab899b33e42f047b91b546f"), out);
+        }
+    }
+
+    @Test
+    public void rfc4493() throws NoSuchAlgorithmException {
+        int[] lengths = {0, 16, 40, 64};
+        String[] macs = {
+            "bb1d6929e95937287fa37d129b756746",
+            "070a16b46b4d4144f79bdd9dd04a287c",
+            "dfa66747de9ae63030ca32611497c827",
+            "51f0bebf7e3b9d92fc49741779363cfe"
+        };
+        for (AesEngine engine : AesEngine.values()) {
+            AesCmac cmac = new AesCmac(engine.create(), 16);
+            cmac.init(RFC4493_KEY);
+            for (int i = 0; i < lengths.length; i++) {
+                cmac.update(RFC4493_MSG, 0, lengths[i]);
+                assertArrayEquals(engine.name() + " " + lengths[i], hex(macs[i]), cmac.doFinal());
+            }
+        }
+    }
+
+    @Test
+    public void javaMatchesJce() {
+        Random random = new Random(42);
+        BlockCipher jce = AesEngine.JCE.create();
+        BlockCipher java = AesEngine.JAVA.create();
+        byte[] key = new byte[16];
+        byte[] in = new byte[64];
+        byte[] expected = new byte[64];
+        byte[] actual = new byte[64];
+        for (int i = 0; i < 100; i++) {
+            random.nextBytes(key);
+            random.nextBytes(in);
+            jce.init(key);
+            java.init(key);
+            jce.encrypt(in, 0, in.length, expected, 0);
+            java.encrypt(in, 0, in.length, actual, 0);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static com.github.cambierr.lorawanpacket.lorawan.AesEngineTest.hex;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class DataFrameEncoderTest {
+
+    private static final byte[] NWK_SKEY = hex("44024241ed4ce9a68c6a8bc055233fd3");
+    private static final byte[] APP_SKEY = hex("ec925802ae430ca77fd3dd73cb2cc588");
+    private static final int DEV_ADDR = 0x49BE7DF1;
+
+    private static DataFrameEncoder encoder() {
+        return new DataFrameEncoder()
+                .setNwkSKey(new SessionCrypto(NWK_SKEY))
+                .setAppSKey(new SessionCrypto(APP_SKEY))
+                .setDevAddr(DEV_ADDR);
+    }
+
+    private static byte[] encode(DataFrameEncoder _encoder) {
+        ByteBuffer bb = ByteBuffer.allocate(_encoder.length());
+        _encoder.encode(bb);
+        assertEquals(bb.capacity(), bb.position());
+        return bb.array();
+    }
+
+    @Test
+    public void referenceUplink() {
+        byte[] frame = encode(encoder()
+                .setMType(MType.UNCONF_DATA_UP)
+                .setfCnt(2)
+                .setPayload(1, "test".getBytes(StandardCharsets.US_ASCII)));
+        assertArrayEquals(hex("40F17DBE4900020001954378762B11FF0D"), frame);
+    }
+
+    @Test
+    public void multiBlockRoundTrip() throws MalformedPacketException {
+        byte[] clear = new byte[45];
+        for (int i = 0; i < clear.length; i++) {
+            clear[i] = (byte) i;
+        }
+        for (int fPort : new int[]{0, 10}) {
+            DataFrameEncoder encoder = encoder()
+                    .setMType(MType.CONF_DATA_DOWN)
+                    .setfCnt(0x12345)
+                    .setPayload(fPort, clear);
+            if (fPort != 0) {
+                encoder.setfOpts(new byte[]{0x02, 0x03});
+            }
+            byte[] frame = encode(encoder);
+
+            PhyPayloadView view = new PhyPayloadView(ByteBuffer.wrap(frame));
+            SessionCrypto nwk = new SessionCrypto(NWK_SKEY);
+            assertTrue(view.validateMic(nwk, 0x12345));
+            view.cipherPayload(fPort == 0 ? nwk : new SessionCrypto(APP_SKEY), 0x12345);
+            byte[] decrypted = new byte[view.getPayloadLength()];
+            for (int i = 0; i < decrypted.length; i++) {
+                decrypted[i] = frame[view.getPayloadOffset() + i];
+            }
+            assertArrayEquals(clear, decrypted);
+        }
+    }
+
+}
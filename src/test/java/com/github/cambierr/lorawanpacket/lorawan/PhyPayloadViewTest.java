@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import static com.github.cambierr.lorawanpacket.lorawan.AesEngineTest.hex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class PhyPayloadViewTest {
+
+    private static final byte[] APP_KEY = hex("2b7e151628aed2a6abf7158809cf4f3c");
+
+    @Test
+    public void joinRequestWithHighAppEuiNibble() throws Exception {
+        // byte 5, read as FCtrl in data frames, would announce 15 bytes of FOpts
+        byte[] frame = hex("00" + "0102030405060708".replace("05", "FF") + "1112131415161718" + "A1B2" + "00000000");
+        assertEquals((byte) 0xff, frame[5]);
+        AesCmac cmac = new AesCmac();
+        cmac.init(APP_KEY);
+        cmac.update(frame, 0, 19);
+        System.arraycopy(cmac.doFinal(), 0, frame, 19, 4);
+
+        PhyPayloadView view = new PhyPayloadView(ByteBuffer.wrap(frame));
+        assertEquals(MType.JOIN_REQUEST, view.getMType());
+        assertTrue(view.validateMic(new SessionCrypto(APP_KEY)));
+    }
+
+    @Test(expected = MalformedPacketException.class)
+    public void dataFrameFOptsOverrun() throws MalformedPacketException {
+        // FCtrl 0x0f announces 15 bytes of FOpts in a 12 bytes frame
+        new PhyPayloadView(ByteBuffer.wrap(hex("40F17DBE490F0200AABBCCDD")));
+    }
+
+}
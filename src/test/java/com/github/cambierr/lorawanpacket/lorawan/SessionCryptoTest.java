@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.lorawan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static com.github.cambierr.lorawanpacket.lorawan.AesEngineTest.hex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class SessionCryptoTest {
+
+    private static final byte[] NWK_SKEY = hex("44024241ed4ce9a68c6a8bc055233fd3");
+    private static final int DEV_ADDR = 0x49BE7DF1;
+
+    @Test
+    public void micAfterInterruptedMessage() {
+        ByteBuffer frame = ByteBuffer.wrap(hex("40F17DBE4900020001954378762B11FF0D"));
+        SessionCrypto crypto = new SessionCrypto(NWK_SKEY);
+        int expected = crypto.computeDataMic(Direction.UP, DEV_ADDR, 2, frame, 0, 13);
+        assertEquals(frame.order(ByteOrder.LITTLE_ENDIAN).getInt(13), expected);
+        try {
+            // truncated: fails after some bytes were fed to the CMAC
+            crypto.computeDataMic(Direction.UP, DEV_ADDR, 2, frame, 0, 20);
+            fail();
+        } catch (IndexOutOfBoundsException ex) {
+            // expected
+        }
+        assertEquals(expected, crypto.computeDataMic(Direction.UP, DEV_ADDR, 2, frame, 0, 13));
+    }
+
+}
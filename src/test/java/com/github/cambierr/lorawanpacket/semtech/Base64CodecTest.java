@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class Base64CodecTest {
+
+    @Test
+    public void roundTrip() throws MalformedPacketException {
+        for (int length = 0; length < 20; length++) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i * 37 + 200);
+            }
+            String expected = Base64.getEncoder().encodeToString(data);
+
+            int encoded = Base64Codec.encodedLength(length);
+            assertEquals(expected.length(), encoded);
+            ByteBuffer bb = ByteBuffer.allocate(encoded);
+            // payload at the tail of its own slot, as the writers do
+            bb.position(encoded - length);
+            bb.put(data);
+            Base64Codec.encode(bb, 0, encoded - length, length);
+            assertEquals(expected, new String(bb.array(), StandardCharsets.US_ASCII));
+
+            assertEquals(length, Base64Codec.decodedLength(bb, 0, encoded));
+            assertArrayEquals(data, Base64Codec.decode(bb, 0, encoded));
+        }
+    }
+
+    @Test
+    public void invalidCharacters() {
+        for (String s : new String[]{"QPF9v!kk", "QPF9 vkk", "Q"}) {
+            ByteBuffer bb = ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+            try {
+                Base64Codec.decode(bb, 0, bb.limit());
+                fail(s);
+            } catch (MalformedPacketException ex) {
+            }
+        }
+    }
+
+}
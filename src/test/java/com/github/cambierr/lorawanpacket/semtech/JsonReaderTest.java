@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.semtech;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class JsonReaderTest {
+
+    private static JsonReader reader(String _json) {
+        return new JsonReader(ByteBuffer.wrap(_json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String field(String _json) throws MalformedPacketException {
+        JsonReader r = reader(_json);
+        r.beginObject();
+        assertTrue(r.nextField());
+        return r.readString();
+    }
+
+    @Test
+    public void escapes() throws MalformedPacketException {
+        assertEquals("a\"b\\c/d\b\f\n\r\t", field("{\"s\":\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\"}"));
+        assertEquals("é€", field("{\"s\":\"\\u00e9\\u20AC\"}"));
+    }
+
+    @Test
+    public void utf8() throws MalformedPacketException {
+        assertEquals("grüße €", field("{\"s\":\"grüße €\"}"));
+        assertEquals("é\"è\"€", field("{\"s\":\"é\\\"è\\\"€\"}"));
+    }
+
+    @Test
+    public void invalidUnicodeEscape() {
+        for (String s : new String[]{"\\u12G4", "\\u+123", "\\u12"}) {
+            try {
+                field("{\"s\":\"" + s + "\"}");
+                fail(s);
+            } catch (MalformedPacketException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void truncatedObject() {
+        for (String json : new String[]{"{\"a\":1,\"b\":", "{\"a\":\"abc", "{\"a\":[1,2", "{\"a\"", "{\"a\":tru"}) {
+            try {
+                JsonReader r = reader(json);
+                r.beginObject();
+                while (r.nextField()) {
+                    r.skipValue();
+                }
+                fail(json);
+            } catch (MalformedPacketException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void unknownKeyIsSkipped() throws MalformedPacketException {
+        JsonReader r = reader("{\"zzz\":{\"x\":[1,-2.5e3,{\"y\":null}],\"t\":true},\"tmst\":3512348611}");
+        r.beginObject();
+        long tmst = -1;
+        while (r.nextField()) {
+            if (r.key() == JsonReader.key("tmst")) {
+                tmst = r.readLong();
+            } else {
+                r.skipValue();
+            }
+        }
+        assertEquals(3512348611L, tmst);
+    }
+
+    @Test
+    public void longKey() throws MalformedPacketException {
+        assertEquals(JsonReader.UNKNOWN_KEY, JsonReader.key("frequency"));
+        assertFalse(JsonReader.key("abcdefgh") == JsonReader.UNKNOWN_KEY);
+
+        JsonReader r = reader("{\"frequency\":1,\"abcdefgh\":2}");
+        r.beginObject();
+        assertTrue(r.nextField());
+        assertEquals(JsonReader.UNKNOWN_KEY, r.key());
+        assertEquals(1, r.readInt());
+        assertTrue(r.nextField());
+        assertEquals(JsonReader.key("abcdefgh"), r.key());
+        assertEquals(2, r.readInt());
+        assertFalse(r.nextField());
+    }
+
+}
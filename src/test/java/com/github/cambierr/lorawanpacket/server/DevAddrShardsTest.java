@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class DevAddrShardsTest {
+
+    /**
+     * Checks that the events of each device come in sequence, and that the
+     * handler is never run by two threads at once.
+     */
+    private static final class SequenceHandler implements DevAddrShards.DeviceHandler<int[]> {
+
+        private final Map<Integer, Integer> last = new HashMap<>();
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final AtomicInteger errors;
+        private final CountDownLatch done;
+        private final Set<String> threads;
+        private final int delay;
+
+        private SequenceHandler(AtomicInteger _errors, CountDownLatch _done, Set<String> _threads, int _delay) {
+            errors = _errors;
+            done = _done;
+            threads = _threads;
+            delay = _delay;
+        }
+
+        @Override
+        public void handle(int _devAddr, int[] _event) {
+            if (!busy.compareAndSet(false, true)) {
+                errors.incrementAndGet();
+            }
+            Integer previous = last.put(_devAddr, _event[1]);
+            if (_event[1] != (previous == null ? 0 : previous + 1)) {
+                errors.incrementAndGet();
+            }
+            threads.add(Thread.currentThread().getName());
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            busy.set(false);
+            done.countDown();
+            if (_event[1] % 1000 == 999) {
+                throw new IllegalStateException("failing event");
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheOrderOfEachDevice() throws InterruptedException {
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger reported = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4 * 64 * 2000);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        DevAddrShards<int[]> shards = new DevAddrShards<int[]>(4, 64, e -> e[0], i -> new SequenceHandler(errors, done, threads, 0), 4)
+                .setErrorHandler(ex -> reported.incrementAndGet())
+                .start();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int first = p * 64;
+            Thread t = new Thread(() -> {
+                for (int seq = 0; seq < 2000; seq++) {
+                    for (int d = first; d < first + 64; d++) {
+                        shards.submit(new int[]{d * 0x01010101, seq});
+                    }
+                }
+            });
+            producers.add(t);
+            t.start();
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        shards.close();
+
+        assertEquals(0, errors.get());
+        assertEquals(4 * 64 * 2, shards.getFailed());
+        assertEquals(4 * 64 * 2, reported.get());
+        assertEquals(0, shards.getDropped());
+    }
+
+    @Test
+    public void handsBucketsOfAHotShardOff() throws InterruptedException {
+        DevAddrShards<int[]> shards = new DevAddrShards<>(2, 64, e -> e[0], i -> null, 2);
+        // devices of distinct buckets, all starting on shard 0
+        List<Integer> devices = new ArrayList<>();
+        Set<Integer> buckets = new HashSet<>();
+        for (int d = 0; devices.size() < 16; d++) {
+            if (shards.shard(d) == 0 && buckets.add(shards.bucket(d))) {
+                devices.add(d);
+            }
+        }
+
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(16 * 20);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        shards = new DevAddrShards<int[]>(2, 64, e -> e[0], i -> new SequenceHandler(errors, done, threads, 1), 2).start();
+        for (int seq = 0; seq < 20; seq++) {
+            for (int d : devices) {
+                shards.submit(new int[]{d, seq});
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        shards.close();
+
+        assertEquals(0, errors.get());
+        assertTrue(shards.getHandoffs() > 0);
+        assertTrue(threads.contains("devaddr-shard-1"));
+    }
+
+    @Test
+    public void closeFromAHandlerDropsTheQueuedEvents() throws InterruptedException {
+        AtomicInteger handled = new AtomicInteger();
+        CountDownLatch closed = new CountDownLatch(1);
+        List<DevAddrShards<int[]>> self = new ArrayList<>();
+        DevAddrShards<int[]> shards = new DevAddrShards<>(1, 1, e -> e[0], i -> (d, e) -> {
+            handled.incrementAndGet();
+            self.get(0).close();
+            closed.countDown();
+        }, 1);
+        self.add(shards);
+        for (int seq = 0; seq < 100; seq++) {
+            shards.submit(new int[]{1, seq});
+        }
+        shards.start();
+
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, handled.get());
+        assertEquals(99, shards.getDropped());
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.Txpk;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class DownlinkSchedulerTest {
+
+    private static Txpk txpk(int _tmst) {
+        return new Txpk.Builder().setTmst(_tmst).build();
+    }
+
+    private static ScheduledDownlink schedule(DownlinkScheduler _scheduler, Gateway _gateway, int _tmst, int _airtime) {
+        return _scheduler.schedule(_gateway, txpk(_tmst), _tmst, _airtime, 1000);
+    }
+
+    @Test
+    public void overlapsAcrossTheCounterWrap() {
+        DownlinkScheduler scheduler = new DownlinkScheduler(100, 10, 0, d -> {
+        });
+        Gateway gateway = new Gateway(1, 0);
+        // from 0xFFFFF000 to 5904, after the counter wrapped
+        assertNotNull(schedule(scheduler, gateway, 0xFFFFF000, 10000));
+
+        assertNull(schedule(scheduler, gateway, 1000, 1000));
+        assertNull(schedule(scheduler, gateway, 5903, 1000));
+        assertNull(schedule(scheduler, gateway, 0xFFFFE000, 5000));
+        assertEquals(3, scheduler.getRejected());
+
+        // ending or starting exactly at the boundaries
+        assertNotNull(schedule(scheduler, gateway, 5904, 1000));
+        assertNotNull(schedule(scheduler, gateway, 0xFFFFE000, 4096));
+        // other gateways and immediate transmissions are not compared
+        assertNotNull(schedule(scheduler, new Gateway(2, 0), 1000, 1000));
+        assertNotNull(scheduler.schedule(gateway, new Txpk.Builder().setImme(true).build(), 1000, 1000, 1000));
+        assertEquals(3, scheduler.getRejected());
+        assertEquals(5, scheduler.size());
+    }
+
+    @Test
+    public void releasesAtTheLeadTime() {
+        List<ScheduledDownlink> released = new ArrayList<>();
+        DownlinkScheduler scheduler = new DownlinkScheduler(100, 10, 0, released::add);
+        Gateway gateway = new Gateway(1, 0);
+        ScheduledDownlink d = schedule(scheduler, gateway, 0x7FFFFFFF, 2000);
+
+        assertEquals(0, scheduler.advance(850));
+        assertEquals(1, scheduler.advance(910));
+        assertSame(d, released.get(0));
+        assertFalse(scheduler.cancel(d));
+
+        // a released transmission no longer blocks its slot
+        ScheduledDownlink again = scheduler.schedule(gateway, txpk(0x7FFFFFFF), 0x7FFFFFFF, 2000, 2000);
+        assertNotNull(again);
+        assertTrue(scheduler.cancel(again));
+        assertNotNull(scheduler.schedule(gateway, txpk(0x80000000), 0x80000000, 2000, 2000));
+
+        // too late to transmit
+        assertNull(scheduler.schedule(gateway, txpk(0), 0, 2000, 910));
+        assertEquals(1, scheduler.getRejected());
+    }
+
+}
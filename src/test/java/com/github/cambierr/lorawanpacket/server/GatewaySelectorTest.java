@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayload;
+import com.github.cambierr.lorawanpacket.semtech.Modulation;
+import com.github.cambierr.lorawanpacket.semtech.Rxpk;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class GatewaySelectorTest {
+
+    private static final byte[] FRAME = {
+        0x40, (byte) 0xF1, 0x7D, (byte) 0xBE, 0x49, 0x00, 0x02, 0x00, 0x01,
+        (byte) 0x95, 0x43, 0x78, 0x76, 0x2B, 0x11, (byte) 0xFF, 0x0D
+    };
+
+    private static Reception reception(long _eui, int _rssi) throws MalformedPacketException {
+        Rxpk rxpk = new Rxpk.Builder()
+                .setTmst(1000)
+                .setModu(Modulation.LORA)
+                .setRssi(_rssi)
+                .setLsnr(5)
+                .setData(new PhyPayload(ByteBuffer.wrap(FRAME)))
+                .build();
+        return new Reception(_eui, rxpk, 0);
+    }
+
+    private static void pullData(GatewayRegistry _registry, long _eui) {
+        _registry.pullData(_eui, new InetSocketAddress("127.0.0.1", 1700 + (int) _eui), 1, 0);
+    }
+
+    @Test
+    public void fallsBackBeyondTheTwoBestReceptions() throws MalformedPacketException {
+        GatewayRegistry registry = new GatewayRegistry(60000);
+        registry.pushData(1, new InetSocketAddress("127.0.0.1", 1701), 1, 0);
+        registry.pushData(2, new InetSocketAddress("127.0.0.1", 1702), 1, 0);
+        pullData(registry, 3);
+        Uplink uplink = new Uplink(FRAME, 0, 0);
+        uplink.add(reception(3, -110));
+        uplink.add(reception(1, -30));
+        uplink.add(reception(2, -40));
+
+        DownlinkRoute route = new GatewaySelector(registry).select(uplink, 50000, 0);
+        assertEquals(3, route.getGateway().getEui());
+    }
+
+    @Test
+    public void skipsGatewaysOverTheirDutyCycle() throws MalformedPacketException {
+        GatewayRegistry registry = new GatewayRegistry(60000);
+        for (long eui = 1; eui <= 3; eui++) {
+            pullData(registry, eui);
+        }
+        GatewaySelector selector = new GatewaySelector(registry).setDutyCycle(0.01, 1000000);
+        selector.transmitted(registry.get(1), 9000, 0);
+        selector.transmitted(registry.get(2), 9000, 0);
+        Uplink uplink = new Uplink(FRAME, 0, 0);
+        uplink.add(reception(1, -30));
+        uplink.add(reception(2, -40));
+        uplink.add(reception(3, -110));
+
+        assertEquals(3, selector.select(uplink, 2000, 0).getGateway().getEui());
+        selector.transmitted(registry.get(3), 9000, 0);
+        assertNull(selector.select(uplink, 2000, 0));
+    }
+
+}
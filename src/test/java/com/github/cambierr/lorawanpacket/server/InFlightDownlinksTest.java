@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.semtech.TxAck;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class InFlightDownlinksTest {
+
+    private static Throwable failure(CompletableFuture<?> _future) {
+        return _future.handle((v, t) -> t).join();
+    }
+
+    @Test
+    public void matchesOnEuiAndToken() {
+        InFlightDownlinks inFlight = new InFlightDownlinks(1000, 0);
+        CompletableFuture<TxAck.Error> a = inFlight.register(1, 7, 0);
+        CompletableFuture<TxAck.Error> b = inFlight.register(2, 7, 0);
+        CompletableFuture<TxAck.Error> c = inFlight.register(1, 8, 0);
+        assertEquals(3, inFlight.size());
+
+        assertFalse(inFlight.complete(2, 8, TxAck.Error.NONE));
+        assertTrue(inFlight.complete(1, 7, TxAck.Error.TOO_LATE));
+        assertEquals(TxAck.Error.TOO_LATE, a.join());
+        assertFalse(b.isDone());
+        assertFalse(c.isDone());
+
+        TxAck ack = new TxAck.Builder(new byte[]{0x00, 0x07}).setGatewayEui(2).setError(TxAck.Error.NONE).build();
+        assertTrue(inFlight.complete(ack));
+        assertEquals(TxAck.Error.NONE, b.join());
+        assertFalse(c.isDone());
+
+        // tokens are 16 bits long
+        assertTrue(inFlight.complete(1, 0x10008, TxAck.Error.COLLISION_PACKET));
+        assertEquals(TxAck.Error.COLLISION_PACKET, c.join());
+        assertEquals(0, inFlight.size());
+        assertFalse(inFlight.complete(1, 7, TxAck.Error.NONE));
+    }
+
+    @Test
+    public void reusedTokensAndTimeouts() {
+        InFlightDownlinks inFlight = new InFlightDownlinks(1000, 0);
+        CompletableFuture<TxAck.Error> first = inFlight.register(1, 5, 0);
+        CompletableFuture<TxAck.Error> second = inFlight.register(1, 5, 0);
+        assertTrue(failure(first) instanceof IllegalStateException);
+        assertEquals(1, inFlight.size());
+
+        assertEquals(0, inFlight.expire(999));
+        assertFalse(second.isDone());
+        assertEquals(1, inFlight.expire(1200));
+        assertTrue(failure(second) instanceof TimeoutException);
+        assertFalse(inFlight.complete(1, 5, TxAck.Error.NONE));
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    public void lookupsSurviveDeletions() {
+        InFlightDownlinks inFlight = new InFlightDownlinks(1000, 0);
+        List<CompletableFuture<TxAck.Error>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(inFlight.register(i % 10, i, 0));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(inFlight.complete(i % 10, i, TxAck.Error.NONE));
+        }
+        for (int i = 1; i < 1000; i += 2) {
+            assertFalse(futures.get(i).isDone());
+            assertTrue("" + i, inFlight.complete(i % 10, i, TxAck.Error.TX_FREQ));
+            assertEquals(TxAck.Error.TX_FREQ, futures.get(i).join());
+        }
+        assertEquals(0, inFlight.size());
+        assertEquals(0, inFlight.expire(2000));
+    }
+
+}
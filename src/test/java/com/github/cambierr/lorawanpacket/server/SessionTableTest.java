@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayloadView;
+import com.github.cambierr.lorawanpacket.lorawan.SessionCrypto;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class SessionTableTest {
+
+    private static final byte[] FRAME = {
+        0x40, (byte) 0xF1, 0x7D, (byte) 0xBE, 0x49, 0x00, 0x02, 0x00, 0x01,
+        (byte) 0x95, 0x43, 0x78, 0x76, 0x2B, 0x11, (byte) 0xFF, 0x0D
+    };
+    private static final int DEV_ADDR = 0x49BE7DF1;
+    private static final byte[] NWK_SKEY = hex("44024241ed4ce9a68c6a8bc055233fd3");
+    private static final byte[] APP_SKEY = hex("ec925802ae430ca77fd3dd73cb2cc588");
+
+    private static byte[] hex(String _hex) {
+        byte[] b = new byte[_hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(_hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+
+    @Test
+    public void resolvesAmongTheSessionsOfADevAddr() throws MalformedPacketException {
+        SessionTable table = new SessionTable(100);
+        long decoy = table.add(DEV_ADDR, 1, APP_SKEY, NWK_SKEY);
+        long session = table.add(DEV_ADDR, 2, NWK_SKEY, APP_SKEY);
+        table.add(DEV_ADDR, 3, new byte[16], new byte[16]);
+        table.add(DEV_ADDR + 1, 4, NWK_SKEY, APP_SKEY);
+        assertEquals(4, table.size());
+
+        long[] refs = new long[8];
+        assertEquals(3, table.lookup(DEV_ADDR, refs));
+        PhyPayloadView frame = new PhyPayloadView(ByteBuffer.wrap(FRAME));
+        SessionCrypto crypto = new SessionCrypto(new byte[16]);
+        assertEquals(session, table.resolve(frame, crypto));
+        assertEquals(2, table.getDevEui(session));
+        assertEquals(DEV_ADDR, table.getDevAddr(session));
+        byte[] raw = FRAME.clone();
+        new PhyPayloadView(ByteBuffer.wrap(raw)).cipherPayload(table.appSKey(session, crypto), 2);
+        assertArrayEquals("test".getBytes(), Arrays.copyOfRange(raw, 9, 13));
+
+        table.remove(session);
+        assertEquals(-1, table.resolve(frame, crypto));
+        assertEquals(2, table.lookup(DEV_ADDR, refs));
+        table.remove(decoy);
+        try {
+            table.remove(decoy);
+            fail("removed twice");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        long again = table.add(DEV_ADDR, 5, NWK_SKEY, APP_SKEY);
+        assertEquals(again, table.resolve(frame, crypto));
+        assertEquals(5, table.getDevEui(again));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void frameCountersOfASession() {
+        SessionTable table = new SessionTable(10);
+        long ref = table.add(DEV_ADDR, 1, NWK_SKEY, APP_SKEY);
+        assertEquals(0, table.expandfCntUp(ref, 0));
+        assertTrue(table.acceptfCntUp(ref, 0));
+        assertFalse(table.acceptfCntUp(ref, 0));
+        assertEquals(0xFFFF, table.expandfCntUp(ref, 0xFFFF));
+        assertTrue(table.acceptfCntUp(ref, 0xFFFF));
+        // the 16 bits counter rolled over
+        assertEquals(0x10001, table.expandfCntUp(ref, 1));
+        assertTrue(table.acceptfCntUp(ref, 0x10001));
+        assertEquals(0x10001, table.getfCntUp(ref));
+
+        // a new session of the same device starts over
+        table.remove(ref);
+        ref = table.add(DEV_ADDR, 1, NWK_SKEY, APP_SKEY);
+        assertEquals(0, table.getfCntUp(ref));
+        assertTrue(table.acceptfCntUp(ref, 0));
+    }
+
+    @Test
+    public void churnKeepsLookupsWorking() {
+        // kept full, removed in insertion order
+        SessionTable table = new SessionTable(48);
+        Deque<Long> refs = new ArrayDeque<>();
+        Deque<Integer> devAddrs = new ArrayDeque<>();
+        long[] out = new long[4];
+        for (int i = 0; i < 200000; i++) {
+            if (refs.size() == 48) {
+                int gone = devAddrs.poll();
+                table.remove(refs.poll());
+                assertEquals(0, table.lookup(gone, out));
+            }
+            int devAddr = i * 0x2545F491;
+            refs.add(table.add(devAddr, i, NWK_SKEY, APP_SKEY));
+            devAddrs.add(devAddr);
+            if (i % 1000 == 0) {
+                for (long ref : refs) {
+                    assertEquals(1, table.lookup(table.getDevAddr(ref), out));
+                    assertEquals(ref, out[0]);
+                }
+            }
+        }
+        assertEquals(48, table.size());
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void deadlinesBeyondOneRevolution() {
+        // 8 buckets of 10: one revolution is 80
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+        long[] deadlines = {5, 50, 85, 240, 555, 1000};
+        for (long d : deadlines) {
+            wheel.schedule(d, d);
+        }
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 1100; now++) {
+            long at = now;
+            wheel.advance(now, d -> {
+                assertTrue("early: " + d + " at " + at, d <= at);
+                assertTrue("late: " + d + " at " + at, at - d < 20);
+                fired.add(d);
+            });
+        }
+        assertEquals(deadlines.length, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void jumpOverSeveralRevolutions() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+        for (long d = 0; d < 1000; d += 7) {
+            wheel.schedule(d, d);
+        }
+        List<Long> fired = new ArrayList<>();
+        assertEquals(72, wheel.advance(500, fired::add));
+        for (long d : fired) {
+            assertTrue(d <= 500);
+        }
+        assertEquals(143 - 72, wheel.advance(2000, fired::add));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelFromCallback() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        List<TimingWheel.Timeout<String>> pending = new ArrayList<>();
+        pending.add(wheel.schedule("a", 10));
+        pending.add(wheel.schedule("b", 10));
+        TimingWheel.Timeout<String> later = wheel.schedule("c", 100);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(30, s -> {
+            fired.add(s);
+            // the other due timeout was already unlinked
+            for (TimingWheel.Timeout<String> t : pending) {
+                assertFalse(wheel.cancel(t));
+            }
+            wheel.cancel(later);
+        });
+        assertEquals(2, fired.size());
+        assertFalse(later.isPending());
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(1000, fired::add));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 cambierr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cambierr.lorawanpacket.server;
+
+import com.github.cambierr.lorawanpacket.lorawan.MalformedPacketException;
+import com.github.cambierr.lorawanpacket.lorawan.PhyPayload;
+import com.github.cambierr.lorawanpacket.semtech.Modulation;
+import com.github.cambierr.lorawanpacket.semtech.Rxpk;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author cambierr
+ */
+public class UplinkDeduplicatorTest {
+
+    private static Rxpk rxpk(int _n, int _rssi) throws MalformedPacketException {
+        byte[] frame = {
+            0x40, (byte) 0xF1, 0x7D, (byte) 0xBE, 0x49, 0x00, (byte) _n, (byte) (_n >> 8), 0x01,
+            (byte) 0x95, 0x43, 0x78, 0x76, 0x2B, 0x11, (byte) 0xFF, 0x0D
+        };
+        return new Rxpk.Builder()
+                .setModu(Modulation.LORA)
+                .setRssi(_rssi)
+                .setLsnr(5)
+                .setData(new PhyPayload(ByteBuffer.wrap(frame)))
+                .build();
+    }
+
+    @Test
+    public void mergesCopiesWithinTheWindow() throws MalformedPacketException {
+        List<Uplink> out = new ArrayList<>();
+        UplinkDeduplicator dedup = new UplinkDeduplicator(200, 0, out::add);
+        Uplink u = dedup.add(1, rxpk(1, -100), 0);
+        assertSame(u, dedup.add(2, rxpk(1, -50), 50));
+        assertSame(u, dedup.add(3, rxpk(1, -80), 150));
+        dedup.advance(150);
+        assertTrue(out.isEmpty());
+
+        dedup.advance(300);
+        assertEquals(1, out.size());
+        assertEquals(3, u.getReceptionCount());
+        assertEquals(2, u.getBest().getGatewayEui());
+        assertEquals(3, u.getSecond().getGatewayEui());
+
+        // remembered for another window: late copies are dropped
+        assertSame(u, dedup.add(4, rxpk(1, -10), 350));
+        assertEquals(1, u.getLate());
+        assertEquals(3, u.getReceptionCount());
+        dedup.advance(1000);
+        assertEquals(0, dedup.size());
+        assertEquals(1, dedup.getEmitted());
+        assertEquals(3, dedup.getDuplicates());
+
+        // forgotten: a new uplink
+        assertTrue(dedup.add(5, rxpk(1, -10), 1000) != u);
+    }
+
+    @Test
+    public void lookupsSurviveDeletions() throws MalformedPacketException {
+        List<Uplink> out = new ArrayList<>();
+        UplinkDeduplicator dedup = new UplinkDeduplicator(100, 0, out::add);
+        List<Uplink> second = new ArrayList<>();
+        // interleaves uplinks forgotten at 200 and at 250, so that removals
+        // happen in the middle of probe sequences while others stay
+        for (int i = 0; i < 2000; i++) {
+            Uplink u = dedup.add(1, rxpk(i, -100), i % 2 == 0 ? 0 : 50);
+            if (i % 2 == 1) {
+                second.add(u);
+            }
+        }
+        dedup.advance(160);
+        assertEquals(2000, out.size());
+        dedup.advance(230);
+        assertEquals(1000, dedup.size());
+        for (int i = 1; i < 2000; i += 2) {
+            assertSame(second.get(i / 2), dedup.add(2, rxpk(i, -100), 230));
+        }
+        assertEquals(1000, dedup.getDuplicates());
+        dedup.advance(1000);
+        assertEquals(0, dedup.size());
+    }
+
+}